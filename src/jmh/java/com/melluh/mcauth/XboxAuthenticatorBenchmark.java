@@ -0,0 +1,49 @@
+package com.melluh.mcauth;
+
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.tokens.XboxToken;
+import com.melluh.mcauth.utils.RequestTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+@State(Scope.Benchmark)
+public class XboxAuthenticatorBenchmark {
+
+    private final String userToken = "EwAIA+pvBAAUKods63Ys1fGlwiccIFJ+qE1hANsAAe2yq1bBQF2nWaPaiGtqxEW1sEqbB1K7wFnJ4jHfzNMXT0SLrKqdLSYTy9xfwkXqgxgSeGG0v8kAZWSGmvpb";
+    private final byte[] responseBody = ("{\"IssueInstant\":\"2022-06-01T12:00:00.0000000Z\",\"NotAfter\":\"2022-06-02T04:00:00.0000000Z\"," +
+            "\"Token\":\"eyJlbmMiOiJBMTI4Q0JDK0hTMjU2IiwiYWxnIjoiUlNBLU9BRVAiLCJjdHkiOiJKV1QiLCJ6aXAiOiJERUYiLCJ4NXQiOiJfVkxWNWlsZFpUbm9KZlNMZEhQcnBVa1pNZ3cifQ\"," +
+            "\"DisplayClaims\":{\"xui\":[{\"uhs\":\"2535405290989041\"}]}}").getBytes(StandardCharsets.UTF_8);
+
+    private final RequestTemplate xstsTemplate = RequestTemplate.json(XboxAuthenticator.buildTokenRequest(JsonObject.builder()
+            .value("SandboxId", "RETAIL")
+            .array("UserTokens", Collections.singleton(RequestTemplate.PLACEHOLDER))
+            .done(), "rp://api.minecraftservices.com/"));
+
+    @Benchmark
+    public String buildXstsRequest() {
+        JsonObject properties = JsonObject.builder()
+                .value("SandboxId", "RETAIL")
+                .array("UserTokens", Collections.singleton(userToken))
+                .done();
+        return XboxAuthenticator.buildTokenRequest(properties, "rp://api.minecraftservices.com/");
+    }
+
+    @Benchmark
+    public byte[] fillXstsTemplate() {
+        return xstsTemplate.fill(userToken);
+    }
+
+    @Benchmark
+    public XboxToken parseTokenResponse() throws JsonParserException {
+        JsonObject json = JsonParser.object().from(new ByteArrayInputStream(responseBody));
+        return XboxAuthenticator.parseTokenResponse(json);
+    }
+
+}
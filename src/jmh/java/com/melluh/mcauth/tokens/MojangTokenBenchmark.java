@@ -0,0 +1,33 @@
+package com.melluh.mcauth.tokens;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+@State(Scope.Benchmark)
+public class MojangTokenBenchmark {
+
+    private MojangToken token;
+
+    @Setup
+    public void setup() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString(("{\"xuid\":\"2535405290989041\",\"agg\":\"Adult\",\"sub\":\"8d3bd5b4-3a1c-4d4b-9a0e-1f3c5f3b0b9e\"," +
+                "\"auth\":\"XBOX\",\"ns\":\"default\",\"roles\":[],\"iss\":\"authentication\",\"flags\":[\"twofactorauth\",\"msamigration_stage4\",\"orders_2022\"]," +
+                "\"profiles\":{\"mc\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\"},\"platform\":\"PC_LAUNCHER\",\"yuid\":\"0f0a9e5f3c0c2d8e\"," +
+                "\"nbf\":1700000000,\"exp\":1700086400,\"iat\":1700000000}").getBytes(StandardCharsets.UTF_8));
+        String signature = encoder.encodeToString(new byte[32]);
+        this.token = new MojangToken(header + "." + payload + "." + signature, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public String getXboxUserId() {
+        return token.getXboxUserId();
+    }
+
+}
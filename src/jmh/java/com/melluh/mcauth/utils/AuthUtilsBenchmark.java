@@ -0,0 +1,59 @@
+package com.melluh.mcauth.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.UUID;
+
+@State(Scope.Benchmark)
+public class AuthUtilsBenchmark {
+
+    private PublicKey publicKey;
+    private SecretKey secretKey;
+    private ServerHasher serverHasher;
+    private UUID uuid;
+    private String mojangUuid;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(1024); // same key size as the vanilla server
+        this.publicKey = keyPairGenerator.generateKeyPair().getPublic();
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        this.secretKey = keyGenerator.generateKey();
+
+        this.serverHasher = new ServerHasher(publicKey);
+        this.uuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        this.mojangUuid = "069a79f444e94726a5befca90e38aaf5";
+    }
+
+    @Benchmark
+    public String calculateServerHash() {
+        return AuthUtils.calculateServerHash("", publicKey, secretKey);
+    }
+
+    @Benchmark
+    public String serverHasher() {
+        return serverHasher.hash("", secretKey);
+    }
+
+    @Benchmark
+    public UUID parseMojangUuid() {
+        return AuthUtils.parseMojangUuid(mojangUuid);
+    }
+
+    @Benchmark
+    public String minifyUuid() {
+        return AuthUtils.minifyUuid(uuid);
+    }
+
+}
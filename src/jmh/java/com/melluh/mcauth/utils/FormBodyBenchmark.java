@@ -0,0 +1,34 @@
+package com.melluh.mcauth.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+public class FormBodyBenchmark {
+
+    private final String clientId = "00000000-0000-0000-0000-000000000000";
+    private final String refreshToken = "M.R3_BAY.-CRhA4TI8n!q2rLIxnJjd*l3UvQe1Bc4oGG7bXkhk*q9gAY5zAeLaW0sDpdN2LFqkWzxgVqE7Fv!4uYbM1$";
+
+    private final RequestTemplate refreshTemplate = new FormBody()
+            .add("client_id", clientId)
+            .add("grant_type", "refresh_token")
+            .add("scope", "XboxLive.signin offline_access")
+            .asTemplate("refresh_token");
+
+    @Benchmark
+    public byte[] refreshTemplate() {
+        return refreshTemplate.fill(refreshToken);
+    }
+
+    @Benchmark
+    public String refreshRequest() {
+        return new FormBody()
+                .add("client_id", clientId)
+                .add("grant_type", "refresh_token")
+                .add("scope", "XboxLive.signin offline_access")
+                .add("refresh_token", refreshToken)
+                .asRequestString();
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.melluh.mcauth;
+
+import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.http.CircuitOpenException;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+// What went wrong in a failed login step, see AuthenticationException.errorCode() and AuthResult
+public enum AuthErrorCode {
+
+    // Microsoft OAuth errors
+    INVALID_GRANT(false),
+    AUTHORIZATION_DECLINED(false),
+    EXPIRED_TOKEN(false),
+    OAUTH_ERROR(false),
+
+    // Xbox Live XErr codes
+    NO_XBOX_PROFILE(false),
+    COUNTRY_UNAVAILABLE(false),
+    ADULT_VERIFICATION_REQUIRED(false),
+    CHILD_ACCOUNT(false),
+    XBOX_ERROR(false),
+
+    // HTTP and transport failures
+    UNAUTHORIZED(false),
+    FORBIDDEN(false),
+    NOT_FOUND(false),
+    GAME_NOT_OWNED(false), // the account has no Minecraft profile
+    RATE_LIMITED(true),
+    SERVER_ERROR(true),
+    HTTP_ERROR(false),
+    TIMEOUT(true),
+    NETWORK_ERROR(true),
+    CIRCUIT_OPEN(true),
+    INVALID_RESPONSE(false),
+    INVALID_SIGNATURE(false),
+
+    UNKNOWN(false);
+
+    private final boolean transientError;
+
+    AuthErrorCode(boolean transientError) {
+        this.transientError = transientError;
+    }
+
+    // True if the same request may succeed later, false if the account or request itself is the problem
+    public boolean isTransient() {
+        return transientError;
+    }
+
+    public static AuthErrorCode fromOAuthError(String error) {
+        if(error == null)
+            return OAUTH_ERROR;
+        return switch (error) {
+            case "invalid_grant" -> INVALID_GRANT;
+            case "authorization_declined", "access_denied" -> AUTHORIZATION_DECLINED;
+            case "expired_token", "bad_verification_code" -> EXPIRED_TOKEN;
+            default -> OAUTH_ERROR;
+        };
+    }
+
+    public static AuthErrorCode fromXboxError(long code) {
+        if(code == 2148916233L)
+            return NO_XBOX_PROFILE;
+        if(code == 2148916235L)
+            return COUNTRY_UNAVAILABLE;
+        if(code == 2148916236L || code == 2148916237L)
+            return ADULT_VERIFICATION_REQUIRED;
+        if(code == 2148916238L)
+            return CHILD_ACCOUNT;
+        return XBOX_ERROR;
+    }
+
+    // 429 and 5xx only show up here once retries are used up
+    public static AuthErrorCode fromStatusCode(int statusCode) {
+        if(statusCode == 429)
+            return RATE_LIMITED;
+        if(statusCode >= 500)
+            return SERVER_ERROR;
+        if(statusCode == 401)
+            return UNAUTHORIZED;
+        if(statusCode == 403)
+            return FORBIDDEN;
+        if(statusCode == 404)
+            return NOT_FOUND;
+        return HTTP_ERROR;
+    }
+
+    // Error code of any exception a login future can fail with
+    public static AuthErrorCode of(Throwable ex) {
+        while((ex instanceof CompletionException || ex instanceof ExecutionException) && ex.getCause() != null)
+            ex = ex.getCause();
+
+        if(ex instanceof AuthenticationException authEx)
+            return authEx.errorCode();
+        if(ex instanceof CircuitOpenException)
+            return CIRCUIT_OPEN;
+        if(ex instanceof HttpTimeoutException)
+            return TIMEOUT;
+        if(ex instanceof IOException)
+            return NETWORK_ERROR;
+        if(ex instanceof JsonParserException)
+            return INVALID_RESPONSE;
+        return UNKNOWN;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.melluh.mcauth;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/*
+ * Outcome of a login step as a value instead of an exceptional future. Handy for sweeping many accounts, where
+ * failures like revoked tokens are normal and should be counted by error code rather than rethrown.
+ */
+public sealed interface AuthResult<T> {
+
+    // Never fails, a failed future completes with a Failure instead
+    static <T> CompletableFuture<AuthResult<T>> of(CompletableFuture<T> future) {
+        return future.handle((value, ex) -> ex == null ? new Success<>(value) : Failure.of(ex));
+    }
+
+    static <T> AuthResult<T> success(T value) {
+        return new Success<>(value);
+    }
+
+    static <T> AuthResult<T> failure(AuthErrorCode errorCode, String message) {
+        return new Failure<>(errorCode, message, null);
+    }
+
+    boolean isSuccess();
+
+    Optional<T> value();
+
+    // Throws the original exception for a failure, or an AuthenticationException if there is none
+    T getOrThrow();
+
+    <R> AuthResult<R> map(Function<? super T, ? extends R> mapper);
+
+    record Success<T>(T result) implements AuthResult<T> {
+
+        @Override
+        public boolean isSuccess() {
+            return true;
+        }
+
+        @Override
+        public Optional<T> value() {
+            return Optional.ofNullable(result);
+        }
+
+        @Override
+        public T getOrThrow() {
+            return result;
+        }
+
+        @Override
+        public <R> AuthResult<R> map(Function<? super T, ? extends R> mapper) {
+            return new Success<>(mapper.apply(result));
+        }
+
+    }
+
+    record Failure<T>(AuthErrorCode errorCode, String message, Throwable cause) implements AuthResult<T> {
+
+        public Failure {
+            Objects.requireNonNull(errorCode, "errorCode cannot be null");
+        }
+
+        static <T> Failure<T> of(Throwable ex) {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            return new Failure<>(AuthErrorCode.of(cause), cause.getMessage(), cause);
+        }
+
+        @Override
+        public boolean isSuccess() {
+            return false;
+        }
+
+        @Override
+        public Optional<T> value() {
+            return Optional.empty();
+        }
+
+        @Override
+        public T getOrThrow() {
+            if(cause instanceof RuntimeException runtimeEx)
+                throw runtimeEx;
+            throw new AuthenticationException(errorCode, message, cause);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <R> AuthResult<R> map(Function<? super T, ? extends R> mapper) {
+            return (AuthResult<R>) this;
+        }
+
+    }
+
+}
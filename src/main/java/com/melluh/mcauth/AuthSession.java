@@ -0,0 +1,25 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.MojangAuthenticator.GameProfile;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.tokens.MojangToken;
+import com.melluh.mcauth.tokens.XboxToken;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+// Tokens for every stage of the login chain, any of which may be null if not obtained yet
+public record AuthSession(MicrosoftToken microsoftToken, XboxToken xblToken, XboxToken xstsToken, MojangToken mojangToken,
+                          GameProfile profile, Map<LoginStage, Duration> stageTimings) {
+
+    public static AuthSession of(MicrosoftToken microsoftToken) {
+        return new AuthSession(microsoftToken, null, null, null, null, Collections.emptyMap());
+    }
+
+    // Whether the session can be used to join a server without running the login chain again
+    public boolean isComplete() {
+        return mojangToken != null && !mojangToken.isExpired() && profile != null;
+    }
+
+}
@@ -2,12 +2,34 @@ package com.melluh.mcauth;
 
 public class AuthenticationException extends RuntimeException {
 
+    private final AuthErrorCode errorCode;
+
     public AuthenticationException(String message) {
-        super(message);
+        this(AuthErrorCode.UNKNOWN, message);
     }
 
+    // The error code is taken from the cause
     public AuthenticationException(String message, Throwable cause) {
+        this(AuthErrorCode.of(cause), message, cause);
+    }
+
+    public AuthenticationException(AuthErrorCode errorCode, String message) {
+        super(message);
+        this.errorCode = errorCode;
+    }
+
+    public AuthenticationException(AuthErrorCode errorCode, String message, Throwable cause) {
         super(message, cause);
+        this.errorCode = errorCode;
+    }
+
+    protected AuthenticationException(AuthErrorCode errorCode, String message, Throwable cause, boolean writableStackTrace) {
+        super(message, cause, false, writableStackTrace);
+        this.errorCode = errorCode;
+    }
+
+    public AuthErrorCode errorCode() {
+        return errorCode;
     }
 
 }
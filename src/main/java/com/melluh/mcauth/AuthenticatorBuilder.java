@@ -0,0 +1,145 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.CircuitBreaker;
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.HttpTransport;
+import com.melluh.mcauth.http.RateLimiter;
+import com.melluh.mcauth.http.RequestSender;
+import com.melluh.mcauth.http.RetryPolicy;
+import com.melluh.mcauth.http.VirtualThreads;
+import com.melluh.mcauth.metrics.AuthListener;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+// Options shared by the builders of every authenticator
+public abstract class AuthenticatorBuilder<B extends AuthenticatorBuilder<B>> {
+
+    private HttpTransport transport;
+    private HttpClient httpClient;
+    private Executor executor;
+    private RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+    private RateLimiter rateLimiter;
+    private CircuitBreaker circuitBreaker;
+    private AuthListener listener = AuthListener.NONE;
+    private Duration requestTimeout = Duration.ofSeconds(10);
+    private boolean customRequestTimeout;
+    private final Map<Endpoint, Duration> endpointTimeouts = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, URI> endpointUris = new EnumMap<>(Endpoint.class);
+
+    // Shares the HttpClient, rate limiter and circuit breaker of the transport. Without one, a builder that sets an
+    // executor or request timeout gets a transport of its own, and any other builder uses HttpTransport.shared().
+    public B setTransport(HttpTransport transport) {
+        this.transport = Objects.requireNonNull(transport, "transport cannot be null");
+        return self();
+    }
+
+    // Uses the client instead of the transport's. The rate limiter and circuit breaker still come from the transport
+    // if one is set, otherwise they're new ones for this authenticator.
+    public B setHttpClient(HttpClient httpClient) {
+        this.httpClient = Objects.requireNonNull(httpClient, "httpClient cannot be null");
+        return self();
+    }
+
+    // Executor that response parsing and other follow-up work runs on, also used by the HttpClient unless a
+    // transport or HttpClient is set
+    public B setExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor cannot be null");
+        return self();
+    }
+
+    // Runs every task on its own virtual thread (falls back to a daemon thread pool before Java 21)
+    public B useVirtualThreads() {
+        return this.setExecutor(VirtualThreads.newExecutor());
+    }
+
+    public B setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = Objects.requireNonNull(retryPolicy, "retryPolicy cannot be null");
+        return self();
+    }
+
+    // Per-host request pacing, overrides the one of the transport
+    public B setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = Objects.requireNonNull(rateLimiter, "rateLimiter cannot be null");
+        return self();
+    }
+
+    // Fails requests fast while a host keeps erroring, overrides the one of the transport
+    public B setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = Objects.requireNonNull(circuitBreaker, "circuitBreaker cannot be null");
+        return self();
+    }
+
+    // Timeout for each request attempt, 10 seconds by default. Also the connect timeout unless a transport or HttpClient is set.
+    public B setRequestTimeout(Duration timeout) {
+        this.requestTimeout = requireTimeout(timeout);
+        this.customRequestTimeout = true;
+        return self();
+    }
+
+    // Overrides the request timeout for a single endpoint
+    public B setRequestTimeout(Endpoint endpoint, Duration timeout) {
+        endpointTimeouts.put(Objects.requireNonNull(endpoint, "endpoint cannot be null"), requireTimeout(timeout));
+        return self();
+    }
+
+    // Sends requests for the endpoint to another URI, such as a proxy or a stand-in server for tests
+    public B setEndpointUri(Endpoint endpoint, URI uri) {
+        endpointUris.put(Objects.requireNonNull(endpoint, "endpoint cannot be null"), Objects.requireNonNull(uri, "uri cannot be null"));
+        return self();
+    }
+
+    // Sends every endpoint to the same scheme, host and port while keeping the default paths
+    public B setBaseUri(URI baseUri) {
+        Objects.requireNonNull(baseUri, "baseUri cannot be null");
+        for(Endpoint endpoint : Endpoint.values())
+            endpointUris.put(endpoint, baseUri.resolve(endpoint.getDefaultUri().getRawPath()));
+        return self();
+    }
+
+    // Receives latency, status code, retry and XErr events for every request, e.g. a MetricsRecorder
+    public B setListener(AuthListener listener) {
+        this.listener = Objects.requireNonNull(listener, "listener cannot be null");
+        return self();
+    }
+
+    protected RequestSender buildSender() {
+        HttpTransport transport = this.transport;
+        if(transport == null && httpClient == null)
+            transport = executor != null || customRequestTimeout ? this.buildTransport() : HttpTransport.shared();
+
+        HttpClient httpClient = this.httpClient != null ? this.httpClient : transport.getHttpClient();
+        RateLimiter rateLimiter = this.rateLimiter != null ? this.rateLimiter : transport != null ? transport.getRateLimiter() : new RateLimiter();
+        CircuitBreaker circuitBreaker = this.circuitBreaker != null ? this.circuitBreaker : transport != null ? transport.getCircuitBreaker() : new CircuitBreaker();
+
+        Map<Endpoint, Duration> timeouts = new EnumMap<>(Endpoint.class);
+        for(Endpoint endpoint : Endpoint.values())
+            timeouts.put(endpoint, endpointTimeouts.getOrDefault(endpoint, requestTimeout));
+        return new RequestSender(httpClient, executor, retryPolicy, rateLimiter, circuitBreaker, listener, endpointUris, timeouts);
+    }
+
+    private HttpTransport buildTransport() {
+        HttpTransport.Builder builder = HttpTransport.createBuilder().setConnectTimeout(requestTimeout);
+        if(executor != null)
+            builder.setExecutor(executor);
+        return builder.build();
+    }
+
+    private static Duration requireTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout cannot be null");
+        if(timeout.isNegative() || timeout.isZero())
+            throw new IllegalArgumentException("timeout must be positive");
+        return timeout;
+    }
+
+    @SuppressWarnings("unchecked")
+    private B self() {
+        return (B) this;
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.LoginPipeline.StageInterceptor;
+import com.melluh.mcauth.utils.AsyncSemaphore;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Refreshes many accounts through a LoginPipeline with bounded concurrency, soonest expiring first
+public class BulkRefresher {
+
+    private final LoginPipeline pipeline;
+    private final int maxConcurrentAccounts;
+    private final Duration minValidity;
+    private final StageInterceptor interceptor;
+
+    private BulkRefresher(LoginPipeline pipeline, int maxConcurrentAccounts, Duration minValidity, Map<LoginStage, AsyncSemaphore> stageLimits) {
+        this.pipeline = pipeline;
+        this.maxConcurrentAccounts = maxConcurrentAccounts;
+        this.minValidity = minValidity;
+        this.interceptor = new StageInterceptor() {
+            @Override
+            public <T> CompletableFuture<T> intercept(LoginStage stage, Supplier<CompletableFuture<T>> call) {
+                AsyncSemaphore semaphore = stageLimits.get(stage);
+                return semaphore != null ? semaphore.run(call) : call.get();
+            }
+        };
+    }
+
+    // Results are passed to the consumer as soon as each account completes, the job's future completes after the last one
+    public Job refresh(Map<String, AuthSession> accounts, Consumer<Result> onResult) {
+        Job job = new Job(accounts, Objects.requireNonNull(onResult, "onResult cannot be null"));
+        job.start();
+        return job;
+    }
+
+    private static long expiryTime(AuthSession session) {
+        return session.mojangToken() != null ? session.mojangToken().getExpiryTime() : Long.MIN_VALUE;
+    }
+
+    public class Job {
+
+        private final Queue<Map.Entry<String, AuthSession>> queue;
+        private final Consumer<Result> onResult;
+        private final CompletableFuture<Progress> future = new CompletableFuture<>();
+        private final AtomicInteger succeeded = new AtomicInteger(), failed = new AtomicInteger();
+        private final int total;
+        private final long startTime = System.nanoTime();
+        private int running; // guarded by queue
+        private boolean draining; // guarded by queue
+
+        private Job(Map<String, AuthSession> accounts, Consumer<Result> onResult) {
+            this.queue = new PriorityQueue<>(Math.max(1, accounts.size()), Comparator.comparingLong(entry -> expiryTime(entry.getValue())));
+            this.queue.addAll(accounts.entrySet());
+            this.onResult = onResult;
+            this.total = accounts.size();
+        }
+
+        private void start() {
+            if(total == 0) {
+                future.complete(this.getProgress());
+                return;
+            }
+            this.drain();
+        }
+
+        // Starts accounts until the concurrency limit is reached. Logins that complete synchronously
+        // (every token still valid) call back in here, the loop picks those up instead of recursing.
+        private void drain() {
+            synchronized (queue) {
+                if(draining)
+                    return;
+                this.draining = true;
+            }
+
+            while(true) {
+                Map.Entry<String, AuthSession> account;
+                synchronized (queue) {
+                    if(running >= maxConcurrentAccounts || (account = queue.poll()) == null) {
+                        this.draining = false;
+                        return;
+                    }
+                    running++;
+                }
+                this.launch(account);
+            }
+        }
+
+        private void launch(Map.Entry<String, AuthSession> account) {
+            CompletableFuture<AuthSession> login;
+            try {
+                login = pipeline.login(account.getValue(), minValidity, interceptor);
+            } catch (RuntimeException ex) {
+                login = CompletableFuture.failedFuture(ex);
+            }
+
+            login.whenComplete((session, ex) -> {
+                (ex != null ? failed : succeeded).incrementAndGet();
+                try {
+                    onResult.accept(new Result(account.getKey(), session, ex));
+                } finally {
+                    synchronized (queue) {
+                        running--;
+                    }
+                    if(succeeded.get() + failed.get() == total) {
+                        future.complete(this.getProgress());
+                    } else {
+                        this.drain();
+                    }
+                }
+            });
+        }
+
+        public Progress getProgress() {
+            return new Progress(total, succeeded.get(), failed.get(), Duration.ofNanos(System.nanoTime() - startTime));
+        }
+
+        // Completes with the final progress once every account is done
+        public CompletableFuture<Progress> getFuture() {
+            return future;
+        }
+
+    }
+
+    // Either session or error is null
+    public record Result(String accountId, AuthSession session, Throwable error) {
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        // Null for a successful refresh
+        public AuthErrorCode errorCode() {
+            return error != null ? AuthErrorCode.of(error) : null;
+        }
+    }
+
+    public record Progress(int total, int succeeded, int failed, Duration elapsed) {
+
+        public int completed() {
+            return succeeded + failed;
+        }
+
+        public double accountsPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds > 0 ? this.completed() / seconds : 0;
+        }
+
+    }
+
+    public static Builder createBuilder(LoginPipeline pipeline) {
+        return new Builder(pipeline);
+    }
+
+    public static class Builder {
+
+        private static final int DEFAULT_MAX_CONCURRENT_ACCOUNTS = 16;
+
+        private final LoginPipeline pipeline;
+        private final Map<LoginStage, AsyncSemaphore> stageLimits = new EnumMap<>(LoginStage.class);
+        private int maxConcurrentAccounts = DEFAULT_MAX_CONCURRENT_ACCOUNTS;
+        private Duration minValidity = Duration.ZERO;
+
+        private Builder(LoginPipeline pipeline) {
+            this.pipeline = Objects.requireNonNull(pipeline, "pipeline cannot be null");
+        }
+
+        public Builder setMaxConcurrentAccounts(int maxConcurrentAccounts) {
+            if(maxConcurrentAccounts < 1)
+                throw new IllegalArgumentException("maxConcurrentAccounts must be at least 1");
+            this.maxConcurrentAccounts = maxConcurrentAccounts;
+            return this;
+        }
+
+        // Tokens expiring within this time are renewed as well
+        public Builder setMinValidity(Duration minValidity) {
+            this.minValidity = Objects.requireNonNull(minValidity, "minValidity cannot be null");
+            return this;
+        }
+
+        // Limits concurrent requests for the given stages together, pass the stages that share a host
+        // in one call (MOJANG and PROFILE both go to api.minecraftservices.com)
+        public Builder setConcurrencyLimit(int limit, LoginStage... stages) {
+            AsyncSemaphore semaphore = new AsyncSemaphore(limit);
+            for(LoginStage stage : stages)
+                stageLimits.put(stage, semaphore);
+            return this;
+        }
+
+        public BulkRefresher build() {
+            return new BulkRefresher(pipeline, maxConcurrentAccounts, minValidity, new EnumMap<>(stageLimits));
+        }
+
+    }
+
+}
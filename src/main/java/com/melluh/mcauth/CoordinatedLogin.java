@@ -0,0 +1,266 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.VirtualThreads;
+import com.melluh.mcauth.store.SharedTokenCache;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.tokens.MojangToken;
+import com.melluh.mcauth.tokens.Token;
+import com.melluh.mcauth.tokens.XboxToken;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Runs logins through a SharedTokenCache, so nodes sharing the cache reuse each other's tokens and only one
+ * node refreshes an account at a time. A node that needs a refresh takes the account's lease first. Nodes that
+ * find the lease taken poll the cache until the new tokens show up, or until the lease expires and they can take
+ * it over. The owner keeps renewing the lease while its refresh runs. The rotated Microsoft refresh token is written
+ * back too, so it is never redeemed twice.
+ */
+public class CoordinatedLogin implements AutoCloseable {
+
+    private static final LoginStage[] TOKEN_STAGES = { LoginStage.MICROSOFT, LoginStage.XBL, LoginStage.XSTS, LoginStage.MOJANG };
+
+    private final LoginPipeline pipeline;
+    private final SharedTokenCache cache;
+    private final String nodeId;
+    private final Duration leaseDuration;
+    private final Executor executor, pollExecutor, renewExecutor;
+    private final boolean ownsExecutor;
+
+    private CoordinatedLogin(LoginPipeline pipeline, SharedTokenCache cache, String nodeId, Duration leaseDuration, Duration pollInterval,
+                             Executor executor, boolean ownsExecutor) {
+        this.pipeline = pipeline;
+        this.cache = cache;
+        this.nodeId = nodeId;
+        this.leaseDuration = leaseDuration;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.pollExecutor = CompletableFuture.delayedExecutor(pollInterval.toMillis(), TimeUnit.MILLISECONDS, executor);
+        this.renewExecutor = CompletableFuture.delayedExecutor(leaseDuration.toMillis() / 3, TimeUnit.MILLISECONDS, executor);
+    }
+
+    // Tokens that expire within minValidity are treated as expired, like LoginPipeline.login
+    public CompletableFuture<AuthSession> login(String accountId, AuthSession session, Duration minValidity) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        Objects.requireNonNull(session, "session cannot be null");
+        return CompletableFuture.supplyAsync(() -> this.read(accountId), executor)
+                .thenCompose(shared -> this.login(accountId, session, minValidity, shared));
+    }
+
+    private CompletableFuture<AuthSession> login(String accountId, AuthSession session, Duration minValidity, Map<LoginStage, SharedTokenCache.Entry> shared) {
+        AuthSession merged = merge(session, shared);
+        if(!needsRefresh(merged, minValidity))
+            return pipeline.login(merged, minValidity); // at most fetches the profile
+
+        return CompletableFuture.supplyAsync(() -> cache.tryAcquireLease(accountId, nodeId, leaseDuration), executor).thenCompose(acquired -> {
+            if(acquired)
+                return this.refreshAsOwner(accountId, session, minValidity);
+
+            return CompletableFuture.supplyAsync(() -> this.read(accountId), pollExecutor)
+                    .thenCompose(next -> this.login(accountId, session, minValidity, next));
+        });
+    }
+
+    // Reads the cache again under the lease, another node may have finished a refresh just before it was taken
+    private CompletableFuture<AuthSession> refreshAsOwner(String accountId, AuthSession session, Duration minValidity) {
+        Lease lease = new Lease(accountId);
+        CompletableFuture<AuthSession> refresh = CompletableFuture.supplyAsync(() -> this.read(accountId), executor).thenCompose(shared ->
+                pipeline.login(merge(session, shared), minValidity).thenApplyAsync(result -> this.publish(accountId, result, shared), executor)
+        );
+        lease.renewUntil(refresh);
+        return refresh.whenCompleteAsync((result, ex) -> lease.release(), executor);
+    }
+
+    /*
+     * Writes the tokens the refresh renewed. Another node can still write first, e.g. after taking over a lease
+     * that lapsed. Its token is then used instead of this node's if it lasts longer, otherwise the write
+     * is tried again on top of it.
+     */
+    private AuthSession publish(String accountId, AuthSession result, Map<LoginStage, SharedTokenCache.Entry> shared) {
+        Map<LoginStage, SharedTokenCache.Entry> adopted = new EnumMap<>(LoginStage.class);
+        for(LoginStage stage : TOKEN_STAGES) {
+            Token token = tokenOf(result, stage);
+            SharedTokenCache.Entry entry = shared.get(stage);
+            if(token == null || (entry != null && entry.token() == token))
+                continue;
+
+            String key = key(accountId, stage);
+            while(!cache.compareAndSet(key, entry != null ? entry.version() : 0, token)) {
+                entry = cache.get(key);
+                if(entry != null && entry.token().getExpiryTime() > token.getExpiryTime()) {
+                    adopted.put(stage, entry);
+                    break;
+                }
+            }
+        }
+        return adopted.isEmpty() ? result : merge(result, adopted);
+    }
+
+    private Map<LoginStage, SharedTokenCache.Entry> read(String accountId) {
+        Map<LoginStage, SharedTokenCache.Entry> entries = new EnumMap<>(LoginStage.class);
+        for(LoginStage stage : TOKEN_STAGES) {
+            SharedTokenCache.Entry entry = cache.get(key(accountId, stage));
+            if(entry != null)
+                entries.put(stage, entry);
+        }
+        return entries;
+    }
+
+    // Cache key of a token, e.g. "<account id>/mojang"
+    public static String key(String accountId, LoginStage stage) {
+        return accountId + "/" + stage.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean needsRefresh(AuthSession session, Duration minValidity) {
+        return session.mojangToken() == null || session.mojangToken().expiresWithin(minValidity.toMillis());
+    }
+
+    // Takes the shared token for every stage where it outlives the local one
+    private static AuthSession merge(AuthSession session, Map<LoginStage, SharedTokenCache.Entry> shared) {
+        return new AuthSession(
+                newer(session.microsoftToken(), shared.get(LoginStage.MICROSOFT), MicrosoftToken.class),
+                newer(session.xblToken(), shared.get(LoginStage.XBL), XboxToken.class),
+                newer(session.xstsToken(), shared.get(LoginStage.XSTS), XboxToken.class),
+                newer(session.mojangToken(), shared.get(LoginStage.MOJANG), MojangToken.class),
+                session.profile(), session.stageTimings());
+    }
+
+    private static <T extends Token> T newer(T local, SharedTokenCache.Entry entry, Class<T> type) {
+        if(entry == null || !type.isInstance(entry.token()))
+            return local;
+        T token = type.cast(entry.token());
+        return local == null || token.getExpiryTime() > local.getExpiryTime() ? token : local;
+    }
+
+    private static Token tokenOf(AuthSession session, LoginStage stage) {
+        return switch (stage) {
+            case MICROSOFT -> session.microsoftToken();
+            case XBL -> session.xblToken();
+            case XSTS -> session.xstsToken();
+            case MOJANG -> session.mojangToken();
+            default -> null;
+        };
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Shuts down the default executor, one passed to the builder is left alone
+    @Override
+    public void close() {
+        if(ownsExecutor)
+            ((ExecutorService) executor).shutdown();
+    }
+
+    // Extends the lease every third of its duration while a refresh runs. A lease that lapsed mid-refresh would let
+    // another node redeem the same refresh token.
+    private class Lease {
+
+        private final String accountId;
+        private final ReentrantLock lock = new ReentrantLock(); // keeps a late renewal from taking the lease back after release
+        private boolean released;
+
+        private Lease(String accountId) {
+            this.accountId = accountId;
+        }
+
+        private void renewUntil(CompletableFuture<?> refresh) {
+            CompletableFuture.runAsync(() -> {
+                if(!refresh.isDone() && this.renew())
+                    this.renewUntil(refresh);
+            }, renewExecutor);
+        }
+
+        // False once the lease is released or another node has taken it
+        private boolean renew() {
+            lock.lock();
+            try {
+                return !released && cache.tryAcquireLease(accountId, nodeId, leaseDuration);
+            } catch (RuntimeException ex) {
+                return !released; // cache unavailable, try again next time
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release() {
+            lock.lock();
+            try {
+                this.released = true;
+                cache.releaseLease(accountId, nodeId);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+    }
+
+    public static Builder createBuilder(LoginPipeline pipeline, SharedTokenCache cache) {
+        return new Builder(pipeline, cache);
+    }
+
+    public static class Builder {
+
+        private static final Duration DEFAULT_LEASE_DURATION = Duration.ofSeconds(30);
+        private static final Duration DEFAULT_POLL_INTERVAL = Duration.ofMillis(500);
+
+        private final LoginPipeline pipeline;
+        private final SharedTokenCache cache;
+        private String nodeId = UUID.randomUUID().toString();
+        private Duration leaseDuration = DEFAULT_LEASE_DURATION;
+        private Duration pollInterval = DEFAULT_POLL_INTERVAL;
+        private Executor executor;
+
+        private Builder(LoginPipeline pipeline, SharedTokenCache cache) {
+            this.pipeline = Objects.requireNonNull(pipeline, "pipeline cannot be null");
+            this.cache = Objects.requireNonNull(cache, "cache cannot be null");
+        }
+
+        // Lease owner name of this node, random by default
+        public Builder setNodeId(String nodeId) {
+            this.nodeId = Objects.requireNonNull(nodeId, "nodeId cannot be null");
+            return this;
+        }
+
+        // Renewed while the owner's refresh runs, so it only needs to outlast the renewal interval of a third of it.
+        // This is also how long other nodes wait before taking over from a node that died mid-refresh.
+        public Builder setLeaseDuration(Duration leaseDuration) {
+            Objects.requireNonNull(leaseDuration, "leaseDuration cannot be null");
+            if(leaseDuration.toMillis() < 3)
+                throw new IllegalArgumentException("leaseDuration must be at least 3 milliseconds");
+            this.leaseDuration = leaseDuration;
+            return this;
+        }
+
+        // How often a node waiting on another node's refresh checks the cache
+        public Builder setPollInterval(Duration pollInterval) {
+            this.pollInterval = Objects.requireNonNull(pollInterval, "pollInterval cannot be null");
+            return this;
+        }
+
+        // Executor for the blocking cache calls. Defaults to virtual threads, which close() shuts down.
+        public Builder setExecutor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor cannot be null");
+            return this;
+        }
+
+        public CoordinatedLogin build() {
+            boolean ownsExecutor = executor == null;
+            return new CoordinatedLogin(pipeline, cache, nodeId, leaseDuration, pollInterval,
+                    ownsExecutor ? VirtualThreads.newExecutor() : executor, ownsExecutor);
+        }
+
+    }
+
+}
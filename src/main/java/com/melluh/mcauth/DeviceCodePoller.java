@@ -0,0 +1,110 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.MicrosoftAuthenticator.DeviceCode;
+import com.melluh.mcauth.MicrosoftAuthenticator.PollingResult;
+import com.melluh.mcauth.MicrosoftAuthenticator.PollingState;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Polls any number of pending device codes from a single scheduler thread, each at its own interval
+public class DeviceCodePoller implements AutoCloseable {
+
+    private static final long SLOW_DOWN_INCREASE = 5000; // RFC 8628, section 3.5
+
+    private final Set<Pending> pending = ConcurrentHashMap.newKeySet();
+
+    private final MicrosoftAuthenticator authenticator;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+
+    public DeviceCodePoller(MicrosoftAuthenticator authenticator) {
+        this(authenticator, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mc-auth-device-code-poller");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    public DeviceCodePoller(MicrosoftAuthenticator authenticator, ScheduledExecutorService scheduler) {
+        this(authenticator, scheduler, false);
+    }
+
+    private DeviceCodePoller(MicrosoftAuthenticator authenticator, ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.authenticator = Objects.requireNonNull(authenticator, "authenticator cannot be null");
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler cannot be null");
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    // Completes once the login is accepted, declined or expired. Cancelling the future stops polling.
+    public CompletableFuture<PollingResult> poll(DeviceCode deviceCode) {
+        Pending login = new Pending(deviceCode);
+        pending.add(login);
+        login.future.whenComplete((result, ex) -> pending.remove(login));
+        login.schedule();
+        return login.future;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        pending.forEach(login -> login.future.cancel(false));
+        if(ownsScheduler)
+            scheduler.shutdownNow();
+    }
+
+    private class Pending {
+
+        private final CompletableFuture<PollingResult> future = new CompletableFuture<>();
+        private final DeviceCode deviceCode;
+        private long interval;
+
+        private Pending(DeviceCode deviceCode) {
+            this.deviceCode = deviceCode;
+            this.interval = deviceCode.checkInterval() * 1000L;
+        }
+
+        private void schedule() {
+            if(future.isDone())
+                return;
+
+            try {
+                scheduler.schedule(this::poll, interval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+        private void poll() {
+            if(future.isDone())
+                return;
+
+            authenticator.pollDeviceCode(deviceCode).whenComplete((result, ex) -> {
+                if(ex != null) {
+                    future.completeExceptionally(ex);
+                    return;
+                }
+
+                if(result.state().isFinal()) {
+                    future.complete(result);
+                    return;
+                }
+
+                if(result.state() == PollingState.SLOW_DOWN)
+                    interval += SLOW_DOWN_INCREASE;
+                this.schedule();
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.MojangAuthenticator.GameProfile;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.tokens.MojangToken;
+import com.melluh.mcauth.tokens.Token;
+import com.melluh.mcauth.tokens.XboxToken;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Runs Microsoft -> XBL -> XSTS -> Mojang -> profile as one async chain, skipping every stage whose token is still valid
+public class LoginPipeline {
+
+    private final MicrosoftAuthenticator microsoftAuth;
+    private final XboxAuthenticator xboxAuth;
+    private final MojangAuthenticator mojangAuth;
+
+    public LoginPipeline(MicrosoftAuthenticator microsoftAuth, XboxAuthenticator xboxAuth, MojangAuthenticator mojangAuth) {
+        this.microsoftAuth = Objects.requireNonNull(microsoftAuth, "microsoftAuth cannot be null");
+        this.xboxAuth = Objects.requireNonNull(xboxAuth, "xboxAuth cannot be null");
+        this.mojangAuth = Objects.requireNonNull(mojangAuth, "mojangAuth cannot be null");
+    }
+
+    public CompletableFuture<AuthSession> login(MicrosoftToken microsoftToken) {
+        return this.login(AuthSession.of(microsoftToken));
+    }
+
+    public CompletableFuture<AuthSession> login(AuthSession session) {
+        return this.login(session, Duration.ZERO);
+    }
+
+    // Tokens that expire within minValidity are treated as expired and renewed
+    public CompletableFuture<AuthSession> login(AuthSession session, Duration minValidity) {
+        return this.login(session, minValidity, StageInterceptor.NONE);
+    }
+
+    public CompletableFuture<AuthSession> login(AuthSession session, Duration minValidity, StageInterceptor interceptor) {
+        Objects.requireNonNull(session.microsoftToken(), "session must contain a Microsoft token");
+        Objects.requireNonNull(interceptor, "interceptor cannot be null");
+        return new Run(session, minValidity.toMillis(), interceptor).execute();
+    }
+
+    public MicrosoftAuthenticator getMicrosoftAuthenticator() {
+        return microsoftAuth;
+    }
+
+    public XboxAuthenticator getXboxAuthenticator() {
+        return xboxAuth;
+    }
+
+    public MojangAuthenticator getMojangAuthenticator() {
+        return mojangAuth;
+    }
+
+    // State of a single login, each stage only runs if a later stage needs its token
+    private class Run {
+
+        private final Map<LoginStage, Duration> timings = Collections.synchronizedMap(new EnumMap<>(LoginStage.class));
+        private final long minValidity;
+        private final StageInterceptor interceptor;
+
+        private MicrosoftToken microsoftToken;
+        private XboxToken xblToken, xstsToken;
+        private MojangToken mojangToken;
+        private GameProfile profile;
+
+        private Run(AuthSession session, long minValidity, StageInterceptor interceptor) {
+            this.minValidity = minValidity;
+            this.interceptor = interceptor;
+            this.microsoftToken = session.microsoftToken();
+            this.xblToken = session.xblToken();
+            this.xstsToken = session.xstsToken();
+            this.mojangToken = session.mojangToken();
+            this.profile = session.profile();
+        }
+
+        private CompletableFuture<AuthSession> execute() {
+            boolean newMojangToken = !isValid(mojangToken);
+            return this.mojangToken()
+                    .thenCompose(token -> profile != null && !newMojangToken
+                            ? CompletableFuture.completedFuture(profile)
+                            : timed(LoginStage.PROFILE, () -> mojangAuth.getProfile(token)))
+                    .thenApply(result -> {
+                        this.profile = result;
+                        return new AuthSession(microsoftToken, xblToken, xstsToken, mojangToken, profile, Map.copyOf(timings));
+                    });
+        }
+
+        private CompletableFuture<MicrosoftToken> microsoftToken() {
+            if(isValid(microsoftToken))
+                return CompletableFuture.completedFuture(microsoftToken);
+            return timed(LoginStage.MICROSOFT, () -> microsoftAuth.refresh(microsoftToken))
+                    .thenApply(token -> this.microsoftToken = token);
+        }
+
+        private CompletableFuture<XboxToken> xblToken() {
+            if(isValid(xblToken))
+                return CompletableFuture.completedFuture(xblToken);
+            return this.microsoftToken()
+                    .thenCompose(token -> timed(LoginStage.XBL, () -> xboxAuth.getXblToken(token)))
+                    .thenApply(token -> this.xblToken = token);
+        }
+
+        private CompletableFuture<XboxToken> xstsToken() {
+            if(isValid(xstsToken))
+                return CompletableFuture.completedFuture(xstsToken);
+            return this.xblToken()
+                    .thenCompose(token -> timed(LoginStage.XSTS, () -> xboxAuth.getXstsToken(token)))
+                    .thenApply(token -> this.xstsToken = token);
+        }
+
+        private CompletableFuture<MojangToken> mojangToken() {
+            if(isValid(mojangToken))
+                return CompletableFuture.completedFuture(mojangToken);
+            return this.xstsToken()
+                    .thenCompose(token -> timed(LoginStage.MOJANG, () -> mojangAuth.getAccessToken(token)))
+                    .thenApply(token -> this.mojangToken = token);
+        }
+
+        private boolean isValid(Token token) {
+            return token != null && !token.expiresWithin(minValidity);
+        }
+
+        private <T> CompletableFuture<T> timed(LoginStage stage, Supplier<CompletableFuture<T>> call) {
+            return interceptor.intercept(stage, () -> {
+                long start = System.nanoTime();
+                return call.get().whenComplete((result, ex) -> timings.put(stage, Duration.ofNanos(System.nanoTime() - start)));
+            });
+        }
+
+    }
+
+    // Wraps the remote call of every stage that isn't skipped, e.g. to limit concurrency per stage
+    public interface StageInterceptor {
+
+        StageInterceptor NONE = new StageInterceptor() {
+            @Override
+            public <T> CompletableFuture<T> intercept(LoginStage stage, Supplier<CompletableFuture<T>> call) {
+                return call.get();
+            }
+        };
+
+        <T> CompletableFuture<T> intercept(LoginStage stage, Supplier<CompletableFuture<T>> call);
+
+    }
+
+}
@@ -0,0 +1,5 @@
+package com.melluh.mcauth;
+
+public enum LoginStage {
+    MICROSOFT, XBL, XSTS, MOJANG, PROFILE
+}
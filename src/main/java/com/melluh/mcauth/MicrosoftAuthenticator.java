@@ -1,66 +1,68 @@
 package com.melluh.mcauth;
 
 import com.grack.nanojson.JsonObject;
-import com.grack.nanojson.JsonParser;
-import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.JsonBodyHandler;
+import com.melluh.mcauth.http.RequestSender;
 import com.melluh.mcauth.tokens.MicrosoftToken;
 import com.melluh.mcauth.utils.FormBody;
+import com.melluh.mcauth.utils.RequestTemplate;
+import com.melluh.mcauth.utils.SingleFlight;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpRequest.BodyPublishers;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
 public class MicrosoftAuthenticator {
 
-    private static final URI DEVICE_CODE_URI = URI.create("https://login.microsoftonline.com/consumers/oauth2/v2.0/devicecode");
-    private static final URI TOKEN_URI = URI.create("https://login.microsoftonline.com/consumers/oauth2/v2.0/token");
-
-    private final HttpClient httpClient;
-    private final String clientId, scope, grantType;
-
-    private MicrosoftAuthenticator(HttpClient httpClient, String clientId, String scope, String grantType) {
-        this.httpClient = httpClient;
-        this.clientId = clientId;
-        this.scope = scope;
-        this.grantType = grantType;
+    private final RequestSender sender;
+    private final SingleFlight<String, MicrosoftToken> refreshes = new SingleFlight<>();
+
+    // Request bodies only differ in the device code or refresh token, so everything else is encoded once
+    private final byte[] deviceCodeBody;
+    private final RequestTemplate pollTemplate, refreshTemplate;
+
+    private MicrosoftAuthenticator(RequestSender sender, String clientId, String scope, String grantType) {
+        this.sender = sender;
+        this.deviceCodeBody = new FormBody()
+                .add("client_id", clientId)
+                .add("scope", scope)
+                .asTemplate()
+                .fill();
+        this.pollTemplate = new FormBody()
+                .add("client_id", clientId)
+                .add("grant_type", grantType)
+                .asTemplate("device_code");
+        this.refreshTemplate = new FormBody()
+                .add("client_id", clientId)
+                .add("grant_type", "refresh_token")
+                .add("scope", scope)
+                .asTemplate("refresh_token");
     }
 
     private AuthenticationException getError(JsonObject json) {
-        String description = json.getString("error") + " (" + json.getString("error_description").split("\\n")[0].trim() + ")";
-        return new AuthenticationException("Request returned error response: " + description);
+        String error = json.getString("error");
+        String description = error + " (" + json.getString("error_description", "").split("\\n")[0].trim() + ")";
+        return new RemoteAuthenticationException(AuthErrorCode.fromOAuthError(error), error, "Request returned error response: " + description);
     }
 
     public CompletableFuture<DeviceCode> getDeviceCode() {
-        return CompletableFuture.supplyAsync(() -> {
-            FormBody formBody = new FormBody()
-                    .add("client_id", clientId)
-                    .add("scope", scope);
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(DEVICE_CODE_URI)
-                    .POST(formBody.asPublisher())
-                    .build();
-
-            try {
-                HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-                JsonObject json = JsonParser.object().from(response.body());
-
-                if(json.has("error")) {
-                    throw getError(json);
-                }
-
-                long expiryTime = System.currentTimeMillis() + json.getInt("expires_in") * 1000L;
-                return new DeviceCode(json.getString("user_code"), json.getString("device_code"),
-                        json.getString("verification_uri"), expiryTime, json.getInt("interval"));
-            } catch (IOException | InterruptedException | JsonParserException ex) {
-                throw new AuthenticationException("Device code request failed", ex);
+        HttpRequest request = sender.newRequest(Endpoint.DEVICE_CODE)
+                .POST(BodyPublishers.ofByteArray(deviceCodeBody))
+                .build();
+
+        return sender.send(Endpoint.DEVICE_CODE, request, JsonBodyHandler.INSTANCE, response -> {
+            JsonObject json = JsonBodyHandler.requireBody(response);
+
+            if(json.has("error")) {
+                throw getError(json);
             }
-        });
+
+            long expiryTime = System.currentTimeMillis() + json.getInt("expires_in") * 1000L;
+            return new DeviceCode(json.getString("user_code"), json.getString("device_code"),
+                    json.getString("verification_uri"), expiryTime, json.getInt("interval"));
+        }, "Device code request failed");
     }
 
     public record DeviceCode(String userCode, String deviceCode, String verificationUri, long expiryTime, int checkInterval) {
@@ -73,69 +75,59 @@ public class MicrosoftAuthenticator {
         if(deviceCode.expired())
             return CompletableFuture.completedFuture(new PollingResult(PollingState.EXPIRED, null));
 
-        return CompletableFuture.supplyAsync(() -> {
-            FormBody body = new FormBody()
-                    .add("client_id", clientId)
-                    .add("grant_type", grantType)
-                    .add("device_code", deviceCode.deviceCode());
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(TOKEN_URI)
-                    .POST(body.asPublisher())
-                    .build();
-
-            try {
-                HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-                JsonObject json = JsonParser.object().from(response.body());
-
-                if(json.has("error")) {
-                    String error = json.getString("error");
-                    if(error.equals("authorization_pending"))
-                        return new PollingResult(PollingState.PENDING, null);
-                    if(error.equals("authorization_declined"))
-                        return new PollingResult(PollingState.DECLINED, null);
-                    throw getError(json);
-                }
-
-                return new PollingResult(PollingState.ACCEPTED, tokenFromJson(json));
-            } catch (IOException | InterruptedException | JsonParserException ex) {
-                throw new AuthenticationException("Device code polling request failed", ex);
+        HttpRequest request = sender.newRequest(Endpoint.TOKEN)
+                .POST(pollTemplate.asPublisher(deviceCode.deviceCode()))
+                .build();
+
+        return sender.send(Endpoint.TOKEN, request, JsonBodyHandler.INSTANCE, response -> {
+            JsonObject json = JsonBodyHandler.requireBody(response);
+
+            if(json.has("error")) {
+                String error = json.getString("error");
+                if(error.equals("authorization_pending"))
+                    return new PollingResult(PollingState.PENDING, null);
+                if(error.equals("authorization_declined"))
+                    return new PollingResult(PollingState.DECLINED, null);
+                if(error.equals("slow_down"))
+                    return new PollingResult(PollingState.SLOW_DOWN, null);
+                if(error.equals("expired_token"))
+                    return new PollingResult(PollingState.EXPIRED, null);
+                throw getError(json);
             }
-        });
+
+            return new PollingResult(PollingState.ACCEPTED, tokenFromJson(json));
+        }, "Device code polling request failed");
     }
 
     public record PollingResult(PollingState state, MicrosoftToken token) {}
 
     public enum PollingState {
-        PENDING, ACCEPTED, DECLINED, EXPIRED
+        PENDING, SLOW_DOWN, ACCEPTED, DECLINED, EXPIRED;
+
+        public boolean isFinal() {
+            return this == ACCEPTED || this == DECLINED || this == EXPIRED;
+        }
     }
 
+    // Concurrent refreshes of the same refresh token share one request, so a rotated refresh token isn't used twice
     public CompletableFuture<MicrosoftToken> refresh(MicrosoftToken microsoftToken) {
-        return CompletableFuture.supplyAsync(() -> {
-            FormBody body = new FormBody()
-                    .add("client_id", clientId)
-                    .add("grant_type", "refresh_token")
-                    .add("scope", scope)
-                    .add("refresh_token", microsoftToken.refreshToken());
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(TOKEN_URI)
-                    .POST(body.asPublisher())
-                    .build();
-
-            try {
-                HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-                JsonObject json = JsonParser.object().from(response.body());
-
-                if(json.has("error")) {
-                    throw getError(json);
-                }
-
-                return tokenFromJson(json);
-            } catch (IOException | InterruptedException | JsonParserException ex) {
-                throw new AuthenticationException("Failed to send refresh request to Microsoft", ex);
+        return refreshes.execute(microsoftToken.refreshToken(), () -> this.sendRefresh(microsoftToken));
+    }
+
+    private CompletableFuture<MicrosoftToken> sendRefresh(MicrosoftToken microsoftToken) {
+        HttpRequest request = sender.newRequest(Endpoint.TOKEN)
+                .POST(refreshTemplate.asPublisher(microsoftToken.refreshToken()))
+                .build();
+
+        return sender.send(Endpoint.TOKEN, request, JsonBodyHandler.INSTANCE, response -> {
+            JsonObject json = JsonBodyHandler.requireBody(response);
+
+            if(json.has("error")) {
+                throw getError(json);
             }
-        });
+
+            return tokenFromJson(json);
+        }, "Failed to send refresh request to Microsoft");
     }
 
     private static MicrosoftToken tokenFromJson(JsonObject json) {
@@ -151,13 +143,12 @@ public class MicrosoftAuthenticator {
         return new Builder(clientId);
     }
 
-    public static class Builder {
+    public static class Builder extends AuthenticatorBuilder<Builder> {
 
         private static final String DEFAULT_SCOPE = "XboxLive.signin offline_access";
         private static final String DEFAULT_GRANT_TYPE = "urn:ietf:params:oauth:grant-type:device_code";
 
         private final String clientId;
-        private HttpClient httpClient;
         private String scope = DEFAULT_SCOPE;
         private String grantType = DEFAULT_GRANT_TYPE;
 
@@ -165,11 +156,6 @@ public class MicrosoftAuthenticator {
             this.clientId = Objects.requireNonNull(clientId, "clientId cannot be null");
         }
 
-        public Builder setHttpClient(HttpClient httpClient) {
-            this.httpClient = Objects.requireNonNull(httpClient, "httpClient cannot be null");
-            return this;
-        }
-
         public Builder setScope(String scope) {
             this.scope = Objects.requireNonNull(scope, "scope cannot be null");
             return this;
@@ -181,9 +167,7 @@ public class MicrosoftAuthenticator {
         }
 
         public MicrosoftAuthenticator build() {
-            if(httpClient == null)
-                this.httpClient = HttpClient.newHttpClient();
-            return new MicrosoftAuthenticator(httpClient, clientId, scope, grantType);
+            return new MicrosoftAuthenticator(this.buildSender(), clientId, scope, grantType);
         }
 
     }
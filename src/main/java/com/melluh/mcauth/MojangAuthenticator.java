@@ -1,99 +1,140 @@
 package com.melluh.mcauth;
 
 import com.grack.nanojson.JsonObject;
-import com.grack.nanojson.JsonParser;
-import com.grack.nanojson.JsonParserException;
 import com.grack.nanojson.JsonWriter;
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.JsonBodyHandler;
+import com.melluh.mcauth.http.RequestSender;
 import com.melluh.mcauth.tokens.MojangToken;
+import com.melluh.mcauth.tokens.PlayerCertificates;
 import com.melluh.mcauth.tokens.XboxToken;
 import com.melluh.mcauth.utils.AuthUtils;
+import com.melluh.mcauth.utils.ExpiringCache;
+import com.melluh.mcauth.utils.RequestTemplate;
+import com.melluh.mcauth.utils.SingleFlight;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 public class MojangAuthenticator {
 
-    private static final URI AUTH_URI = URI.create("https://api.minecraftservices.com/authentication/login_with_xbox");
-    private static final URI PROFILE_URI = URI.create("https://api.minecraftservices.com/minecraft/profile");
-    private static final URI SESSION_JOIN_URI = URI.create("https://sessionserver.mojang.com/session/minecraft/join");
+    private static final RequestTemplate AUTH_TEMPLATE = RequestTemplate.json(JsonWriter.string(JsonObject.builder()
+            .value("identityToken", "XBL3.0 x=" + RequestTemplate.PLACEHOLDER + ";" + RequestTemplate.PLACEHOLDER)
+            .done()));
+    private static final RequestTemplate JOIN_TEMPLATE = RequestTemplate.json(JsonWriter.string(JsonObject.builder()
+            .value("accessToken", RequestTemplate.PLACEHOLDER)
+            .value("selectedProfile", RequestTemplate.PLACEHOLDER)
+            .value("serverId", RequestTemplate.PLACEHOLDER)
+            .done()));
+
+    private final RequestSender sender;
+    private final Duration profileHedgeDelay;
+    private final SingleFlight<String, MojangToken> tokenRequests = new SingleFlight<>();
+    private final SingleFlight<String, GameProfile> profileRequests = new SingleFlight<>();
+    private final ExpiringCache<String, PlayerCertificates> certificates;
+    private final SingleFlight<String, PlayerCertificates> certificateRequests = new SingleFlight<>();
+
+    private MojangAuthenticator(RequestSender sender, Duration profileHedgeDelay, int certificateCacheSize) {
+        this.sender = sender;
+        this.profileHedgeDelay = profileHedgeDelay;
+        this.certificates = new ExpiringCache<>(certificateCacheSize, 0);
+    }
+
+    public CompletableFuture<MojangToken> getAccessToken(XboxToken xstsToken) {
+        return tokenRequests.execute(xstsToken.getValue(), () -> this.requestAccessToken(xstsToken));
+    }
 
-    private static final String IDENTITY_TOKEN_FORMAT = "XBL3.0 x=%s;%s";
+    private CompletableFuture<MojangToken> requestAccessToken(XboxToken xstsToken) {
+        HttpRequest request = sender.newRequest(Endpoint.LOGIN_WITH_XBOX)
+                .POST(AUTH_TEMPLATE.asPublisher(xstsToken.getUserHash(), xstsToken.getValue()))
+                .build();
 
-    private final HttpClient httpClient;
+        return sender.send(Endpoint.LOGIN_WITH_XBOX, request, JsonBodyHandler.INSTANCE, response -> {
+            if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Authentication request to Mojang failed", response.statusCode());
 
-    private MojangAuthenticator(HttpClient httpClient) {
-        this.httpClient = httpClient;
-    }
+            JsonObject json = JsonBodyHandler.requireBody(response);
 
-    public CompletableFuture<MojangToken> getAccessToken(XboxToken xstsToken) {
-        return CompletableFuture.supplyAsync(() -> {
-            JsonObject reqJson = JsonObject.builder()
-                    .value("identityToken", String.format(IDENTITY_TOKEN_FORMAT, xstsToken.getUserHash(), xstsToken.getValue()))
-                    .done();
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(AUTH_URI)
-                    .POST(BodyPublishers.ofString(JsonWriter.string(reqJson)))
-                    .build();
-
-            try {
-                HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-                JsonObject json = JsonParser.object().from(response.body());
-
-                long expiryTime = System.currentTimeMillis() + json.getInt("expires_in") * 1000L;
-                return new MojangToken(json.getString("access_token"), expiryTime);
-            } catch (IOException | InterruptedException | JsonParserException ex) {
-                throw new AuthenticationException("Authentication request to Mojang failed", ex);
-            }
-        });
+            long expiryTime = System.currentTimeMillis() + json.getInt("expires_in") * 1000L;
+            return new MojangToken(json.getString("access_token"), expiryTime);
+        }, "Authentication request to Mojang failed");
     }
 
     public CompletableFuture<GameProfile> getProfile(MojangToken mojangToken) {
-        return CompletableFuture.supplyAsync(() -> {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(PROFILE_URI)
-                    .header("Authorization", "Bearer " + mojangToken.getValue())
-                    .build();
-
-            try {
-                HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-                JsonObject json = JsonParser.object().from(response.body());
-                return new GameProfile(AuthUtils.parseMojangUuid(json.getString("id")), json.getString("name"));
-            } catch (IOException | InterruptedException | JsonParserException ex) {
-                throw new AuthenticationException("Profile request to Mojang failed", ex);
-            }
-        });
+        return profileRequests.execute(mojangToken.getValue(), () -> profileHedgeDelay != null
+                ? sender.hedge(() -> this.requestProfile(mojangToken), profileHedgeDelay)
+                : this.requestProfile(mojangToken));
+    }
+
+    private CompletableFuture<GameProfile> requestProfile(MojangToken mojangToken) {
+        HttpRequest request = sender.newRequest(Endpoint.PROFILE)
+                .header("Authorization", "Bearer " + mojangToken.getValue())
+                .build();
+
+        return sender.send(Endpoint.PROFILE, request, JsonBodyHandler.INSTANCE, response -> {
+            if(response.statusCode() == 404)
+                throw new RemoteAuthenticationException(AuthErrorCode.GAME_NOT_OWNED, "404", "Account does not own Minecraft");
+            if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Profile request to Mojang failed", response.statusCode());
+
+            JsonObject json = JsonBodyHandler.requireBody(response);
+            return new GameProfile(AuthUtils.parseMojangUuid(json.getString("id")), json.getString("name"));
+        }, "Profile request to Mojang failed");
+    }
+
+    /*
+     * Chat signing key pair of the account, cached per profile until it expires. Once the refresh time has passed
+     * the cached certificates are still returned while new ones are requested in the background.
+     */
+    public CompletableFuture<PlayerCertificates> getCertificates(MojangToken mojangToken) {
+        UUID profileId;
+        try {
+            profileId = mojangToken.getProfileId();
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex); // not a readable JWT
+        }
+        String key = profileId != null ? profileId.toString() : mojangToken.getValue();
+
+        PlayerCertificates cached = certificates.get(key);
+        if(cached != null && !cached.isExpired()) {
+            if(cached.needsRefresh())
+                certificateRequests.execute(key, () -> this.requestCertificates(key, mojangToken));
+            return CompletableFuture.completedFuture(cached);
+        }
+        return certificateRequests.execute(key, () -> this.requestCertificates(key, mojangToken));
+    }
+
+    private CompletableFuture<PlayerCertificates> requestCertificates(String key, MojangToken mojangToken) {
+        HttpRequest request = sender.newRequest(Endpoint.PLAYER_CERTIFICATES)
+                .header("Authorization", "Bearer " + mojangToken.getValue())
+                .POST(BodyPublishers.noBody())
+                .build();
+
+        return sender.send(Endpoint.PLAYER_CERTIFICATES, request, JsonBodyHandler.INSTANCE, response -> {
+            if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Certificates request to Mojang failed", response.statusCode());
+
+            PlayerCertificates result = PlayerCertificates.fromJson(JsonBodyHandler.requireBody(response));
+            certificates.put(key, result, result.getExpiryTime() - System.currentTimeMillis());
+            return result;
+        }, "Certificates request to Mojang failed");
     }
 
     public CompletableFuture<Void> sendJoin(MojangToken token, GameProfile profile, String serverHash) {
-        return CompletableFuture.runAsync(() -> {
-            JsonObject reqJson = JsonObject.builder()
-                    .value("accessToken", token.getValue())
-                    .value("selectedProfile", AuthUtils.minifyUuid(profile.uuid()))
-                    .value("serverId", serverHash)
-                    .done();
-
-           HttpRequest request = HttpRequest.newBuilder()
-                   .uri(SESSION_JOIN_URI)
-                   .POST(BodyPublishers.ofString(JsonWriter.string(reqJson)))
-                   .build();
-
-           try {
-               HttpResponse<Void> response = httpClient.send(request, BodyHandlers.discarding());
-               if(response.statusCode() / 100 != 2)
-                   throw new AuthenticationException("Session join request to Mojang failed (status code: " + response.statusCode() + ")");
-           } catch (IOException | InterruptedException ex) {
-               throw new AuthenticationException("Session join request to Mojang failed", ex);
-           }
-        });
+        HttpRequest request = sender.newRequest(Endpoint.SESSION_JOIN)
+                .POST(JOIN_TEMPLATE.asPublisher(token.getValue(), AuthUtils.minifyUuid(profile.uuid()), serverHash))
+                .build();
+
+        return sender.send(Endpoint.SESSION_JOIN, request, BodyHandlers.discarding(), response -> {
+            if(response.statusCode() / 100 != 2)
+                throw RemoteAuthenticationException.forStatus("Session join request to Mojang failed", response.statusCode());
+            return null;
+        }, "Session join request to Mojang failed");
     }
 
     public record GameProfile(UUID uuid, String username) {}
@@ -106,19 +147,32 @@ public class MojangAuthenticator {
         return new Builder();
     }
 
-    public static class Builder {
+    public static class Builder extends AuthenticatorBuilder<Builder> {
+
+        private static final int DEFAULT_CERTIFICATE_CACHE_SIZE = 10000;
+
+        private Duration profileHedgeDelay;
+        private int certificateCacheSize = DEFAULT_CERTIFICATE_CACHE_SIZE;
 
-        private HttpClient httpClient;
+        // Sends a second profile request if the first has not completed after the delay, off by default
+        public Builder setProfileHedgeDelay(Duration profileHedgeDelay) {
+            Objects.requireNonNull(profileHedgeDelay, "profileHedgeDelay cannot be null");
+            if(profileHedgeDelay.isNegative())
+                throw new IllegalArgumentException("profileHedgeDelay cannot be negative");
+            this.profileHedgeDelay = profileHedgeDelay;
+            return this;
+        }
 
-        public Builder setHttpClient(HttpClient httpClient) {
-            this.httpClient = Objects.requireNonNull(httpClient, "httpClient cannot be null");
+        // Maximum number of accounts whose certificates are kept
+        public Builder setCertificateCacheSize(int certificateCacheSize) {
+            if(certificateCacheSize < 1)
+                throw new IllegalArgumentException("certificateCacheSize must be at least 1");
+            this.certificateCacheSize = certificateCacheSize;
             return this;
         }
 
         public MojangAuthenticator build() {
-            if(httpClient == null)
-                this.httpClient = HttpClient.newHttpClient();
-            return new MojangAuthenticator(httpClient);
+            return new MojangAuthenticator(this.buildSender(), profileHedgeDelay, certificateCacheSize);
         }
 
     }
@@ -0,0 +1,372 @@
+package com.melluh.mcauth;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonWriter;
+import com.melluh.mcauth.MojangAuthenticator.GameProfile;
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.JsonBodyHandler;
+import com.melluh.mcauth.http.RequestSender;
+import com.melluh.mcauth.profile.ProfileProperty;
+import com.melluh.mcauth.profile.PropertyVerifier;
+import com.melluh.mcauth.profile.SignedProfile;
+import com.melluh.mcauth.profile.Textures;
+import com.melluh.mcauth.utils.AuthUtils;
+import com.melluh.mcauth.utils.ExpiringCache;
+import com.melluh.mcauth.utils.SingleFlight;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/*
+ * Resolves other players' names and UUIDs to profiles. Name lookups arriving within the batch window are sent
+ * together as one bulk request of up to 10 names. Results, including players that do not exist, are cached.
+ * Signed profiles (with textures) have their own cache bounded by estimated memory use, stale entries in it
+ * are revalidated with their ETag.
+ */
+public class ProfileLookup {
+
+    private static final int MAX_BATCH_SIZE = 10;
+    // A single invalid name fails the whole bulk request, so those are answered locally
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_]{1,25}");
+    // How long a stale signed profile is kept around for revalidation
+    private static final long STALE_RETENTION = TimeUnit.HOURS.toMillis(1);
+
+    private final RequestSender sender;
+    private final Executor batchExecutor;
+    private final long cacheTtl, negativeCacheTtl;
+    private final ExpiringCache<String, Optional<GameProfile>> names;
+    private final ExpiringCache<UUID, Optional<GameProfile>> uuids;
+    private final SingleFlight<UUID, Optional<GameProfile>> uuidRequests = new SingleFlight<>();
+
+    private final long signedProfileTtl;
+    private final ExpiringCache<UUID, CachedProfile> signedProfiles;
+    private final SingleFlight<UUID, CachedProfile> signedProfileRequests = new SingleFlight<>();
+    private final boolean verifySignatures;
+    private volatile CompletableFuture<PropertyVerifier> verifier; // fetched on first use unless given to the builder
+
+    private final Object lock = new Object();
+    private Map<String, CompletableFuture<Optional<GameProfile>>> batch = new HashMap<>(); // guarded by lock
+
+    private ProfileLookup(RequestSender sender, Duration batchWindow, int cacheSize, Duration cacheTtl, Duration negativeCacheTtl,
+                          Duration signedProfileTtl, long signedProfileCacheBytes, boolean verifySignatures, PropertyVerifier verifier) {
+        this.sender = sender;
+        this.batchExecutor = sender.getExecutor() == null
+                ? CompletableFuture.delayedExecutor(batchWindow.toMillis(), TimeUnit.MILLISECONDS)
+                : CompletableFuture.delayedExecutor(batchWindow.toMillis(), TimeUnit.MILLISECONDS, sender.getExecutor());
+        this.cacheTtl = cacheTtl.toMillis();
+        this.negativeCacheTtl = negativeCacheTtl.toMillis();
+        this.names = new ExpiringCache<>(cacheSize, this.cacheTtl);
+        this.uuids = new ExpiringCache<>(cacheSize, this.cacheTtl);
+        this.signedProfileTtl = signedProfileTtl.toMillis();
+        this.signedProfiles = new ExpiringCache<>(signedProfileCacheBytes, this.signedProfileTtl + STALE_RETENTION, (uuid, entry) -> entry.weight());
+        this.verifySignatures = verifySignatures || verifier != null;
+        this.verifier = verifier != null ? CompletableFuture.completedFuture(verifier) : null;
+    }
+
+    // Names are case-insensitive, the returned profile has the name in its current capitalization
+    public CompletableFuture<Optional<GameProfile>> lookupName(String username) {
+        Objects.requireNonNull(username, "username cannot be null");
+        if(!VALID_NAME.matcher(username).matches())
+            return CompletableFuture.completedFuture(Optional.empty());
+
+        String key = username.toLowerCase(Locale.ROOT);
+        Optional<GameProfile> cached = names.get(key);
+        if(cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        CompletableFuture<Optional<GameProfile>> future;
+        Map<String, CompletableFuture<Optional<GameProfile>>> scheduled = null, full = null;
+        synchronized (lock) {
+            future = batch.get(key);
+            if(future == null) {
+                future = new CompletableFuture<>();
+                batch.put(key, future);
+                if(batch.size() == 1) {
+                    scheduled = batch;
+                } else if(batch.size() >= MAX_BATCH_SIZE) {
+                    full = batch;
+                    this.batch = new HashMap<>();
+                }
+            }
+        }
+
+        if(scheduled != null) {
+            Map<String, CompletableFuture<Optional<GameProfile>>> window = scheduled;
+            batchExecutor.execute(() -> this.flush(window));
+        }
+        if(full != null)
+            this.sendBatch(full);
+        return future.copy();
+    }
+
+    public CompletableFuture<Optional<GameProfile>> lookupUuid(UUID uuid) {
+        Objects.requireNonNull(uuid, "uuid cannot be null");
+        Optional<GameProfile> cached = uuids.get(uuid);
+        if(cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        return uuidRequests.execute(uuid, () -> this.requestUuid(uuid));
+    }
+
+    private CompletableFuture<Optional<GameProfile>> requestUuid(UUID uuid) {
+        HttpRequest request = sender.newRequest(Endpoint.PROFILE_BY_UUID)
+                .uri(URI.create(sender.getUri(Endpoint.PROFILE_BY_UUID) + "/" + AuthUtils.minifyUuid(uuid)))
+                .build();
+
+        return sender.send(Endpoint.PROFILE_BY_UUID, request, JsonBodyHandler.INSTANCE, response -> {
+            if(response.statusCode() == 204 || response.statusCode() == 404) {
+                uuids.put(uuid, Optional.empty(), negativeCacheTtl);
+                return Optional.empty();
+            }
+            if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Profile request to Mojang failed", response.statusCode());
+
+            GameProfile profile = parseProfile(JsonBodyHandler.requireBody(response));
+            this.cache(profile);
+            return Optional.of(profile);
+        }, "Profile request to Mojang failed");
+    }
+
+    // Profile including its signed properties, such as the textures
+    public CompletableFuture<Optional<SignedProfile>> getSignedProfile(UUID uuid) {
+        return this.getCachedProfile(uuid).thenApply(CachedProfile::profile);
+    }
+
+    public CompletableFuture<Optional<Textures>> getTextures(UUID uuid) {
+        return this.getCachedProfile(uuid).thenApply(CachedProfile::textures);
+    }
+
+    private CompletableFuture<CachedProfile> getCachedProfile(UUID uuid) {
+        Objects.requireNonNull(uuid, "uuid cannot be null");
+        CachedProfile cached = signedProfiles.get(uuid);
+        if(cached != null && cached.freshUntil() >= System.currentTimeMillis())
+            return CompletableFuture.completedFuture(cached);
+
+        return signedProfileRequests.execute(uuid, () -> this.requestSignedProfile(uuid, cached));
+    }
+
+    // Sends If-None-Match with the ETag of the stale entry if there is one, a 304 keeps the entry for another TTL
+    private CompletableFuture<CachedProfile> requestSignedProfile(UUID uuid, CachedProfile stale) {
+        HttpRequest.Builder builder = sender.newRequest(Endpoint.PROFILE_BY_UUID)
+                .uri(URI.create(sender.getUri(Endpoint.PROFILE_BY_UUID) + "/" + AuthUtils.minifyUuid(uuid) + "?unsigned=false"));
+        if(stale != null && stale.etag() != null)
+            builder.header("If-None-Match", stale.etag());
+
+        return sender.send(Endpoint.PROFILE_BY_UUID, builder.build(), JsonBodyHandler.INSTANCE, response -> {
+            long now = System.currentTimeMillis();
+            if(response.statusCode() == 304 && stale != null)
+                return stale.withFreshUntil(now + signedProfileTtl);
+            if(response.statusCode() == 204 || response.statusCode() == 404)
+                return CachedProfile.of(null, null, now + negativeCacheTtl);
+            if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Profile request to Mojang failed", response.statusCode());
+
+            SignedProfile profile = SignedProfile.fromJson(JsonBodyHandler.requireBody(response));
+            return CachedProfile.of(profile, response.headers().firstValue("ETag").orElse(null), now + signedProfileTtl);
+        }, "Profile request to Mojang failed").thenCompose(entry -> {
+            if(!verifySignatures || entry == stale || entry.profile().isEmpty())
+                return CompletableFuture.completedFuture(entry);
+
+            return this.getVerifier().thenApply(verifier -> {
+                if(!verifier.verify(entry.profile().get()))
+                    throw new AuthenticationException(AuthErrorCode.INVALID_SIGNATURE, "Profile properties of " + uuid + " have an invalid signature");
+                return entry;
+            });
+        }).thenApply(entry -> {
+            signedProfiles.put(uuid, entry, entry.freshUntil() - System.currentTimeMillis() + STALE_RETENTION);
+            entry.profile().ifPresent(profile -> this.cache(new GameProfile(profile.uuid(), profile.username())));
+            return entry;
+        });
+    }
+
+    // Fetches the property keys once, a failed fetch is retried on the next verification
+    private CompletableFuture<PropertyVerifier> getVerifier() {
+        synchronized (lock) {
+            CompletableFuture<PropertyVerifier> future = verifier;
+            if(future == null || future.isCompletedExceptionally()) {
+                future = sender.send(Endpoint.PUBLIC_KEYS, sender.newRequest(Endpoint.PUBLIC_KEYS).build(), JsonBodyHandler.INSTANCE, response -> {
+                    if(response.statusCode() != 200)
+                        throw RemoteAuthenticationException.forStatus("Public keys request to Mojang failed", response.statusCode());
+                    return PropertyVerifier.fromPublicKeys(JsonBodyHandler.requireBody(response));
+                }, "Public keys request to Mojang failed");
+                this.verifier = future;
+            }
+            return future;
+        }
+    }
+
+    // Sends the batch the timer was started for, unless it already filled up and was sent
+    private void flush(Map<String, CompletableFuture<Optional<GameProfile>>> window) {
+        synchronized (lock) {
+            if(batch != window)
+                return;
+            this.batch = new HashMap<>();
+        }
+        this.sendBatch(window);
+    }
+
+    private void sendBatch(Map<String, CompletableFuture<Optional<GameProfile>>> batch) {
+        HttpRequest request = sender.newRequest(Endpoint.PROFILE_LOOKUP)
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofString(JsonWriter.string(JsonArray.from(batch.keySet().toArray()))))
+                .build();
+
+        sender.send(Endpoint.PROFILE_LOOKUP, request, JsonBodyHandler.ARRAY, response -> {
+            if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Profile lookup request to Mojang failed", response.statusCode());
+
+            Map<String, GameProfile> found = new HashMap<>();
+            JsonArray json = JsonBodyHandler.requireBody(response);
+            for(int i = 0; i < json.size(); i++) {
+                GameProfile profile = parseProfile(json.getObject(i));
+                found.put(profile.username().toLowerCase(Locale.ROOT), profile);
+            }
+            return found;
+        }, "Profile lookup request to Mojang failed").whenComplete((found, ex) -> {
+            for(Map.Entry<String, CompletableFuture<Optional<GameProfile>>> entry : batch.entrySet()) {
+                if(ex != null) {
+                    entry.getValue().completeExceptionally(ex);
+                    continue;
+                }
+
+                GameProfile profile = found.get(entry.getKey());
+                if(profile != null) {
+                    this.cache(profile);
+                } else {
+                    names.put(entry.getKey(), Optional.empty(), negativeCacheTtl);
+                }
+                entry.getValue().complete(Optional.ofNullable(profile));
+            }
+        });
+    }
+
+    private void cache(GameProfile profile) {
+        Optional<GameProfile> value = Optional.of(profile);
+        names.put(profile.username().toLowerCase(Locale.ROOT), value, cacheTtl);
+        uuids.put(profile.uuid(), value, cacheTtl);
+    }
+
+    // Weight is a rough estimate of the memory used by the entry, in bytes
+    private record CachedProfile(Optional<SignedProfile> profile, Optional<Textures> textures, String etag, long freshUntil, long weight) {
+
+        private static CachedProfile of(SignedProfile profile, String etag, long freshUntil) {
+            if(profile == null)
+                return new CachedProfile(Optional.empty(), Optional.empty(), null, freshUntil, 64);
+
+            long weight = 256 + (etag != null ? etag.length() * 2L : 0);
+            for(ProfileProperty property : profile.properties())
+                weight += 64 + 2L * (property.name().length() + property.value().length() + (property.isSigned() ? property.signature().length() : 0));
+            return new CachedProfile(Optional.of(profile), profile.getTextures(), etag, freshUntil, weight);
+        }
+
+        private CachedProfile withFreshUntil(long freshUntil) {
+            return new CachedProfile(profile, textures, etag, freshUntil, weight);
+        }
+
+    }
+
+    private static GameProfile parseProfile(JsonObject json) {
+        return new GameProfile(AuthUtils.parseMojangUuid(json.getString("id")), json.getString("name"));
+    }
+
+    public static ProfileLookup createDefault() {
+        return createBuilder().build();
+    }
+
+    public static Builder createBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder extends AuthenticatorBuilder<Builder> {
+
+        private static final Duration DEFAULT_BATCH_WINDOW = Duration.ofMillis(50);
+        private static final int DEFAULT_CACHE_SIZE = 10000;
+        private static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes(10);
+        private static final Duration DEFAULT_NEGATIVE_CACHE_TTL = Duration.ofMinutes(1);
+        private static final Duration DEFAULT_SIGNED_PROFILE_TTL = Duration.ofMinutes(5);
+        private static final long DEFAULT_SIGNED_PROFILE_CACHE_BYTES = 16L * 1024 * 1024;
+
+        private Duration batchWindow = DEFAULT_BATCH_WINDOW;
+        private int cacheSize = DEFAULT_CACHE_SIZE;
+        private Duration cacheTtl = DEFAULT_CACHE_TTL;
+        private Duration negativeCacheTtl = DEFAULT_NEGATIVE_CACHE_TTL;
+        private Duration signedProfileTtl = DEFAULT_SIGNED_PROFILE_TTL;
+        private long signedProfileCacheBytes = DEFAULT_SIGNED_PROFILE_CACHE_BYTES;
+        private boolean verifySignatures;
+        private PropertyVerifier propertyVerifier;
+
+        // How long a name lookup waits for others to share its bulk request
+        public Builder setBatchWindow(Duration batchWindow) {
+            Objects.requireNonNull(batchWindow, "batchWindow cannot be null");
+            if(batchWindow.isNegative())
+                throw new IllegalArgumentException("batchWindow cannot be negative");
+            this.batchWindow = batchWindow;
+            return this;
+        }
+
+        // Maximum number of entries in each of the name and UUID caches
+        public Builder setCacheSize(int cacheSize) {
+            if(cacheSize < 1)
+                throw new IllegalArgumentException("cacheSize must be at least 1");
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder setCacheTtl(Duration cacheTtl) {
+            this.cacheTtl = Objects.requireNonNull(cacheTtl, "cacheTtl cannot be null");
+            return this;
+        }
+
+        // How long names and UUIDs without a player are remembered
+        public Builder setNegativeCacheTtl(Duration negativeCacheTtl) {
+            this.negativeCacheTtl = Objects.requireNonNull(negativeCacheTtl, "negativeCacheTtl cannot be null");
+            return this;
+        }
+
+        // How long a signed profile is used before it is revalidated
+        public Builder setSignedProfileTtl(Duration signedProfileTtl) {
+            this.signedProfileTtl = Objects.requireNonNull(signedProfileTtl, "signedProfileTtl cannot be null");
+            return this;
+        }
+
+        // Upper bound on the estimated memory used by cached signed profiles
+        public Builder setSignedProfileCacheBytes(long signedProfileCacheBytes) {
+            if(signedProfileCacheBytes < 1)
+                throw new IllegalArgumentException("signedProfileCacheBytes must be at least 1");
+            this.signedProfileCacheBytes = signedProfileCacheBytes;
+            return this;
+        }
+
+        // Rejects signed profiles whose properties don't verify, fetching the keys from Mojang's public keys endpoint
+        public Builder setVerifySignatures(boolean verifySignatures) {
+            this.verifySignatures = verifySignatures;
+            return this;
+        }
+
+        // Verifies signed profiles with the given keys instead of fetching them
+        public Builder setPropertyVerifier(PropertyVerifier propertyVerifier) {
+            this.propertyVerifier = Objects.requireNonNull(propertyVerifier, "propertyVerifier cannot be null");
+            return this;
+        }
+
+        public ProfileLookup build() {
+            return new ProfileLookup(this.buildSender(), batchWindow, cacheSize, cacheTtl, negativeCacheTtl,
+                    signedProfileTtl, signedProfileCacheBytes, verifySignatures, propertyVerifier);
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.melluh.mcauth;
+
+/*
+ * An error reported by a remote service, or a request that could not reach it. These are expected outcomes
+ * (revoked refresh tokens, accounts without an Xbox profile, outages), so like CircuitOpenException they have no
+ * stack trace. Where there is a cause, it keeps its own.
+ */
+public class RemoteAuthenticationException extends AuthenticationException {
+
+    private final String remoteCode;
+
+    public RemoteAuthenticationException(AuthErrorCode errorCode, String remoteCode, String message) {
+        this(errorCode, remoteCode, message, null);
+    }
+
+    public RemoteAuthenticationException(AuthErrorCode errorCode, String remoteCode, String message, Throwable cause) {
+        super(errorCode, message, cause, false);
+        this.remoteCode = remoteCode;
+    }
+
+    public static RemoteAuthenticationException forStatus(String message, int statusCode) {
+        return new RemoteAuthenticationException(AuthErrorCode.fromStatusCode(statusCode), String.valueOf(statusCode),
+                message + " (status code: " + statusCode + ")");
+    }
+
+    // The code as sent by the service, e.g. "invalid_grant", an XErr code or an HTTP status code. Null for transport failures.
+    public String getRemoteCode() {
+        return remoteCode;
+    }
+
+}
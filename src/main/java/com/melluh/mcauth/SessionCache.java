@@ -0,0 +1,197 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.tokens.MojangToken;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the sessions of many accounts and renews them in the background before the Mojang token expires
+public class SessionCache implements AutoCloseable {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LoginPipeline pipeline;
+    private final CoordinatedLogin coordinatedLogin;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final Duration refreshMargin;
+    private final long refreshJitter, retryDelay;
+
+    private SessionCache(LoginPipeline pipeline, CoordinatedLogin coordinatedLogin, ScheduledExecutorService scheduler, boolean ownsScheduler,
+                         Duration refreshMargin, Duration refreshJitter, Duration retryDelay) {
+        this.pipeline = pipeline;
+        this.coordinatedLogin = coordinatedLogin;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.refreshMargin = refreshMargin;
+        this.refreshJitter = refreshJitter.toMillis();
+        this.retryDelay = retryDelay.toMillis();
+    }
+
+    // Completes the session if needed, then keeps it refreshed until the account is removed
+    public CompletableFuture<AuthSession> add(String accountId, AuthSession session) {
+        Objects.requireNonNull(accountId, "accountId cannot be null");
+        Entry entry = new Entry(accountId);
+        Entry previous = entries.put(accountId, entry);
+        if(previous != null)
+            previous.cancel();
+
+        return this.login(accountId, session, refreshMargin).whenComplete((result, ex) -> {
+            if(ex != null) {
+                entries.remove(accountId, entry);
+            } else {
+                entry.update(result);
+            }
+        });
+    }
+
+    private CompletableFuture<AuthSession> login(String accountId, AuthSession session, Duration minValidity) {
+        return coordinatedLogin != null
+                ? coordinatedLogin.login(accountId, session, minValidity)
+                : pipeline.login(session, minValidity);
+    }
+
+    // Returns the cached session without any network access, or null if the account is unknown or still logging in
+    public AuthSession get(String accountId) {
+        Entry entry = entries.get(accountId);
+        return entry != null ? entry.session : null;
+    }
+
+    public void remove(String accountId) {
+        Entry entry = entries.remove(accountId);
+        if(entry != null)
+            entry.cancel();
+    }
+
+    public Set<String> getAccountIds() {
+        return entries.keySet();
+    }
+
+    @Override
+    public void close() {
+        entries.values().forEach(Entry::cancel);
+        entries.clear();
+        if(ownsScheduler)
+            scheduler.shutdownNow();
+    }
+
+    private class Entry {
+
+        private final String accountId;
+        private volatile AuthSession session;
+        private volatile long leadTime;
+        private volatile ScheduledFuture<?> task;
+        private volatile boolean cancelled;
+
+        private Entry(String accountId) {
+            this.accountId = accountId;
+        }
+
+        private void update(AuthSession session) {
+            this.session = session;
+
+            // Refresh a random amount of time ahead of the margin so accounts added together don't all renew at once
+            this.leadTime = refreshMargin.toMillis() + (refreshJitter > 0 ? ThreadLocalRandom.current().nextLong(refreshJitter) : 0);
+            long refreshAt = session.mojangToken().getExpiryTime() - leadTime;
+            this.schedule(Math.max(0, refreshAt - System.currentTimeMillis()));
+        }
+
+        // The refresh runs leadTime before expiry, so it has to ask for at least that much validity to renew anything
+        private void refresh() {
+            MojangToken current = session.mojangToken();
+            long minValidity = Math.max(leadTime, current.getExpiryTime() - System.currentTimeMillis() + 1);
+            SessionCache.this.login(accountId, session, Duration.ofMillis(minValidity)).whenComplete((result, ex) -> {
+                if(ex != null || result.mojangToken() == current) {
+                    this.schedule(retryDelay); // failed, or nothing was renewed
+                } else {
+                    this.update(result);
+                }
+            });
+        }
+
+        private void schedule(long delay) {
+            if(cancelled || entries.get(accountId) != this)
+                return;
+            this.task = scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancel() {
+            this.cancelled = true;
+            ScheduledFuture<?> task = this.task;
+            if(task != null)
+                task.cancel(false);
+        }
+
+    }
+
+    public static Builder createBuilder(LoginPipeline pipeline) {
+        return new Builder(pipeline);
+    }
+
+    public static class Builder {
+
+        private static final Duration DEFAULT_REFRESH_MARGIN = Duration.ofMinutes(10);
+        private static final Duration DEFAULT_REFRESH_JITTER = Duration.ofMinutes(5);
+        private static final Duration DEFAULT_RETRY_DELAY = Duration.ofMinutes(1);
+
+        private final LoginPipeline pipeline;
+        private CoordinatedLogin coordinatedLogin;
+        private ScheduledExecutorService scheduler;
+        private Duration refreshMargin = DEFAULT_REFRESH_MARGIN;
+        private Duration refreshJitter = DEFAULT_REFRESH_JITTER;
+        private Duration retryDelay = DEFAULT_RETRY_DELAY;
+
+        private Builder(LoginPipeline pipeline) {
+            this.pipeline = Objects.requireNonNull(pipeline, "pipeline cannot be null");
+        }
+
+        public Builder setScheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = Objects.requireNonNull(scheduler, "scheduler cannot be null");
+            return this;
+        }
+
+        // Shares tokens with other nodes through the login's cache, so only one node refreshes each account
+        public Builder setCoordinatedLogin(CoordinatedLogin coordinatedLogin) {
+            this.coordinatedLogin = Objects.requireNonNull(coordinatedLogin, "coordinatedLogin cannot be null");
+            return this;
+        }
+
+        // How long before expiry a token gets renewed
+        public Builder setRefreshMargin(Duration refreshMargin) {
+            this.refreshMargin = Objects.requireNonNull(refreshMargin, "refreshMargin cannot be null");
+            return this;
+        }
+
+        // Maximum random amount by which a refresh is moved forward
+        public Builder setRefreshJitter(Duration refreshJitter) {
+            this.refreshJitter = Objects.requireNonNull(refreshJitter, "refreshJitter cannot be null");
+            return this;
+        }
+
+        public Builder setRetryDelay(Duration retryDelay) {
+            this.retryDelay = Objects.requireNonNull(retryDelay, "retryDelay cannot be null");
+            return this;
+        }
+
+        public SessionCache build() {
+            boolean ownsScheduler = scheduler == null;
+            ScheduledExecutorService scheduler = ownsScheduler ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mc-auth-session-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }) : this.scheduler;
+            return new SessionCache(pipeline, coordinatedLogin, scheduler, ownsScheduler, refreshMargin, refreshJitter, retryDelay);
+        }
+
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.JsonBodyHandler;
+import com.melluh.mcauth.http.RequestSender;
+import com.melluh.mcauth.profile.SignedProfile;
+import com.melluh.mcauth.utils.ExpiringCache;
+import com.melluh.mcauth.utils.SingleFlight;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Server half of the join handshake: checks with the session server that a player sent a join for this server
+public class SessionVerifier {
+
+    private final RequestSender sender;
+    private final ExpiringCache<String, SignedProfile> cache;
+    private final SingleFlight<String, Optional<SignedProfile>> requests = new SingleFlight<>();
+
+    private SessionVerifier(RequestSender sender, int cacheSize, Duration cacheTtl) {
+        this.sender = sender;
+        this.cache = new ExpiringCache<>(cacheSize, cacheTtl.toMillis());
+    }
+
+    public CompletableFuture<Optional<SignedProfile>> hasJoined(String username, String serverHash) {
+        return this.hasJoined(username, serverHash, null);
+    }
+
+    // The IP is optional, when given the session server also checks it matches the client that sent the join
+    public CompletableFuture<Optional<SignedProfile>> hasJoined(String username, String serverHash, InetAddress ip) {
+        Objects.requireNonNull(username, "username cannot be null");
+        Objects.requireNonNull(serverHash, "serverHash cannot be null");
+
+        String query = "username=" + URLEncoder.encode(username, StandardCharsets.UTF_8) +
+                "&serverId=" + URLEncoder.encode(serverHash, StandardCharsets.UTF_8);
+        if(ip != null)
+            query += "&ip=" + URLEncoder.encode(ip.getHostAddress(), StandardCharsets.UTF_8);
+
+        SignedProfile cached = cache.get(query);
+        if(cached != null)
+            return CompletableFuture.completedFuture(Optional.of(cached));
+
+        String cacheKey = query;
+        return requests.execute(cacheKey, () -> this.requestHasJoined(cacheKey));
+    }
+
+    private CompletableFuture<Optional<SignedProfile>> requestHasJoined(String query) {
+        HttpRequest request = sender.newRequest(Endpoint.HAS_JOINED)
+                .uri(URI.create(sender.getUri(Endpoint.HAS_JOINED) + "?" + query))
+                .build();
+
+        return sender.send(Endpoint.HAS_JOINED, request, JsonBodyHandler.INSTANCE, response -> {
+            // 204 means the player did not join, negative results are not cached since the join may still arrive
+            if(response.statusCode() == 204)
+                return Optional.empty();
+            if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Session verification request to Mojang failed", response.statusCode());
+
+            SignedProfile profile = SignedProfile.fromJson(JsonBodyHandler.requireBody(response));
+            cache.put(query, profile);
+            return Optional.of(profile);
+        }, "Session verification request to Mojang failed");
+    }
+
+    public static SessionVerifier createDefault() {
+        return createBuilder().build();
+    }
+
+    public static Builder createBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder extends AuthenticatorBuilder<Builder> {
+
+        private static final int DEFAULT_CACHE_SIZE = 10000;
+        private static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(30);
+
+        private int cacheSize = DEFAULT_CACHE_SIZE;
+        private Duration cacheTtl = DEFAULT_CACHE_TTL;
+
+        // Maximum number of successful verifications kept for duplicate requests
+        public Builder setCacheSize(int cacheSize) {
+            if(cacheSize < 1)
+                throw new IllegalArgumentException("cacheSize must be at least 1");
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder setCacheTtl(Duration cacheTtl) {
+            this.cacheTtl = Objects.requireNonNull(cacheTtl, "cacheTtl cannot be null");
+            return this;
+        }
+
+        public SessionVerifier build() {
+            return new SessionVerifier(this.buildSender(), cacheSize, cacheTtl);
+        }
+
+    }
+
+}
@@ -1,86 +1,95 @@
 package com.melluh.mcauth;
 
 import com.grack.nanojson.JsonObject;
-import com.grack.nanojson.JsonParser;
-import com.grack.nanojson.JsonParserException;
 import com.grack.nanojson.JsonWriter;
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.JsonBodyHandler;
+import com.melluh.mcauth.http.RequestSender;
 import com.melluh.mcauth.tokens.MicrosoftToken;
 import com.melluh.mcauth.tokens.XboxToken;
+import com.melluh.mcauth.utils.RequestTemplate;
+import com.melluh.mcauth.utils.SingleFlight;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublishers;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.time.Instant;
 import java.util.Collections;
-import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
 public class XboxAuthenticator {
 
-    private static final URI XBL_TOKEN_URI = URI.create("https://user.auth.xboxlive.com/user/authenticate");
-    private static final URI XSTS_TOKEN_URI = URI.create("https://xsts.auth.xboxlive.com/xsts/authorize");
-
-    private final HttpClient httpClient;
-
-    private XboxAuthenticator(HttpClient httpClient) {
-        this.httpClient = httpClient;
+    // Only the user token differs between requests, so the rest of the body is built once
+    private static final RequestTemplate XBL_TEMPLATE = RequestTemplate.json(buildTokenRequest(JsonObject.builder()
+            .value("AuthMethod", "RPS")
+            .value("SiteName", "user.auth.xboxlive.com")
+            .value("RpsTicket", "d=" + RequestTemplate.PLACEHOLDER)
+            .done(), "http://auth.xboxlive.com")); // Must be HTTP to work
+    private static final RequestTemplate XSTS_TEMPLATE = RequestTemplate.json(buildTokenRequest(JsonObject.builder()
+            .value("SandboxId", "RETAIL")
+            .array("UserTokens", Collections.singleton(RequestTemplate.PLACEHOLDER))
+            .done(), "rp://api.minecraftservices.com/"));
+
+    private final RequestSender sender;
+    private final SingleFlight<String, XboxToken> xblRequests = new SingleFlight<>();
+    private final SingleFlight<String, XboxToken> xstsRequests = new SingleFlight<>();
+
+    private XboxAuthenticator(RequestSender sender) {
+        this.sender = sender;
     }
 
     public CompletableFuture<XboxToken> getXblToken(MicrosoftToken microsoftToken) {
-        return CompletableFuture.supplyAsync(() -> {
-            JsonObject properties = JsonObject.builder()
-                    .value("AuthMethod", "RPS")
-                    .value("SiteName", "user.auth.xboxlive.com")
-                    .value("RpsTicket", "d=" + microsoftToken.getValue())
-                    .done();
-            return handleTokenRequest(XBL_TOKEN_URI, properties, "http://auth.xboxlive.com"); // Must be HTTP to work
-        });
+        return xblRequests.execute(microsoftToken.getValue(), () -> this.requestXblToken(microsoftToken));
     }
 
     public CompletableFuture<XboxToken> getXstsToken(XboxToken xblToken) {
-        return CompletableFuture.supplyAsync(() -> {
-            JsonObject properties = JsonObject.builder()
-                    .value("SandboxId", "RETAIL")
-                    .array("UserTokens", Collections.singleton(xblToken.getValue()))
-                    .done();
-            return handleTokenRequest(XSTS_TOKEN_URI, properties, "rp://api.minecraftservices.com/");
-        });
+        return xstsRequests.execute(xblToken.getValue(), () -> this.requestXstsToken(xblToken));
+    }
+
+    private CompletableFuture<XboxToken> requestXblToken(MicrosoftToken microsoftToken) {
+        return handleTokenRequest(Endpoint.XBL_TOKEN, XBL_TEMPLATE.fill(microsoftToken.getValue()));
+    }
+
+    private CompletableFuture<XboxToken> requestXstsToken(XboxToken xblToken) {
+        return handleTokenRequest(Endpoint.XSTS_TOKEN, XSTS_TEMPLATE.fill(xblToken.getValue()));
+    }
+
+    private CompletableFuture<XboxToken> handleTokenRequest(Endpoint endpoint, byte[] body) {
+        HttpRequest request = sender.newRequest(endpoint)
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofByteArray(body))
+                .build();
+
+        return sender.send(endpoint, request, JsonBodyHandler.INSTANCE, response -> {
+            JsonObject json = response.body();
+            if(json != null && json.has("XErr"))
+                sender.getListener().onXboxError(endpoint, json.getLong("XErr"));
+            else if(response.statusCode() != 200)
+                throw RemoteAuthenticationException.forStatus("Authentication request to Xbox Live failed", response.statusCode());
+            return parseTokenResponse(JsonBodyHandler.requireBody(response));
+        }, "Authentication request to Xbox Live failed");
     }
 
-    private XboxToken handleTokenRequest(URI uri, JsonObject properties, String relyingParty) {
+    static String buildTokenRequest(JsonObject properties, String relyingParty) {
         JsonObject reqJson = JsonObject.builder()
                 .value("Properties", properties)
                 .value("RelyingParty", relyingParty)
                 .value("TokenType", "JWT")
                 .done();
+        return JsonWriter.string(reqJson);
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(uri)
-                .header("Content-Type", "application/json")
-                .POST(BodyPublishers.ofString(JsonWriter.string(reqJson)))
-                .build();
-
-        try {
-            HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
-            JsonObject json = JsonParser.object().from(response.body());
-
-            if(json.has("XErr")) {
-                long code = json.getLong("XErr");
-                throw new AuthenticationException("Authentication request to Xbox Live returned error: " + code + " (" + errorDescription(code) + ")");
-            }
+    static XboxToken parseTokenResponse(JsonObject json) {
+        if(json.has("XErr")) {
+            long code = json.getLong("XErr");
+            throw new RemoteAuthenticationException(AuthErrorCode.fromXboxError(code), String.valueOf(code),
+                    "Authentication request to Xbox Live returned error: " + code + " (" + errorDescription(code) + ")");
+        }
 
-            String token = json.getString("Token");
-            long expiryTime = Instant.parse(json.getString("NotAfter")).toEpochMilli();
-            String userHash = json.getObject("DisplayClaims").getArray("xui").getObject(0).getString("uhs");
+        String token = json.getString("Token");
+        long expiryTime = Instant.parse(json.getString("NotAfter")).toEpochMilli();
+        String userHash = json.getObject("DisplayClaims").getArray("xui").getObject(0).getString("uhs");
 
-            return new XboxToken(token, expiryTime, userHash);
-        } catch (IOException | InterruptedException | JsonParserException ex) {
-            throw new AuthenticationException("Authentication request to Xbox Live failed", ex);
-        }
+        return new XboxToken(token, expiryTime, userHash);
     }
 
     private static String errorDescription(long code) {
@@ -103,19 +112,10 @@ public class XboxAuthenticator {
         return new Builder();
     }
 
-    public static class Builder {
-
-        private HttpClient httpClient;
-
-        public Builder setHttpClient(HttpClient httpClient) {
-            this.httpClient = Objects.requireNonNull(httpClient, "httpClient cannot be null");
-            return this;
-        }
+    public static class Builder extends AuthenticatorBuilder<Builder> {
 
         public XboxAuthenticator build() {
-            if (httpClient == null)
-                this.httpClient = HttpClient.newHttpClient();
-            return new XboxAuthenticator(httpClient);
+            return new XboxAuthenticator(this.buildSender());
         }
 
     }
@@ -0,0 +1,101 @@
+package com.melluh.mcauth.http;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Per-host circuit breaker. After a number of consecutive connection errors, timeouts, 429 or 5xx responses
+ * the host is considered down and requests to it fail fast with a CircuitOpenException. Once the open
+ * duration has passed a single trial request is let through, which closes the circuit if it succeeds.
+ * Hosts are keyed like RequestSender.hostKey, so servers on different ports of one machine have separate circuits.
+ */
+public class CircuitBreaker {
+
+    private static final CircuitBreaker DISABLED = new CircuitBreaker(Integer.MAX_VALUE, Duration.ZERO);
+
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    private final int failureThreshold;
+    private final long openDuration;
+
+    public CircuitBreaker() {
+        this(5, Duration.ofSeconds(30));
+    }
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        Objects.requireNonNull(openDuration, "openDuration cannot be null");
+        if(failureThreshold < 1 || openDuration.isNegative())
+            throw new IllegalArgumentException("failureThreshold must be at least 1 and openDuration cannot be negative");
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration.toNanos();
+    }
+
+    public static CircuitBreaker disabled() {
+        return DISABLED;
+    }
+
+    // Returns false if requests to the host should fail fast right now
+    public boolean tryAcquire(String host) {
+        if(this == DISABLED)
+            return true;
+        HostState state = hosts.get(host);
+        return state == null || state.tryAcquire();
+    }
+
+    public void recordSuccess(String host) {
+        if(this == DISABLED)
+            return;
+        HostState state = hosts.get(host);
+        if(state != null)
+            state.recordSuccess();
+    }
+
+    public void recordFailure(String host) {
+        if(this == DISABLED)
+            return;
+        hosts.computeIfAbsent(host, key -> new HostState()).recordFailure();
+    }
+
+    public boolean isOpen(String host) {
+        HostState state = hosts.get(host);
+        return state != null && state.isOpen();
+    }
+
+    private class HostState {
+
+        private int failures;
+        private long openedAt;
+        private boolean open, trialInFlight;
+
+        private synchronized boolean tryAcquire() {
+            if(!open)
+                return true;
+            if(trialInFlight || System.nanoTime() - openedAt < openDuration)
+                return false;
+            this.trialInFlight = true;
+            return true;
+        }
+
+        private synchronized void recordSuccess() {
+            this.failures = 0;
+            this.open = false;
+            this.trialInFlight = false;
+        }
+
+        private synchronized void recordFailure() {
+            this.failures++;
+            if(trialInFlight || failures >= failureThreshold) {
+                this.open = true;
+                this.openedAt = System.nanoTime();
+                this.trialInFlight = false;
+            }
+        }
+
+        private synchronized boolean isOpen() {
+            return open;
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.melluh.mcauth.http;
+
+// Thrown instead of sending a request while the circuit breaker for its host is open. Has no stack trace, since it is
+// expected to be thrown a lot during an outage.
+public class CircuitOpenException extends RuntimeException {
+
+    private final String host;
+
+    public CircuitOpenException(String host) {
+        super("Circuit breaker open for " + host, null, false, false);
+        this.host = host;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+}
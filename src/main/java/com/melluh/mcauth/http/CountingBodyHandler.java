@@ -0,0 +1,60 @@
+package com.melluh.mcauth.http;
+
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+// Counts the bytes of a single response body, only used when a listener is set
+class CountingBodyHandler<T> implements BodyHandler<T> {
+
+    private final BodyHandler<T> delegate;
+    private volatile long bytes;
+
+    CountingBodyHandler(BodyHandler<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public BodySubscriber<T> apply(ResponseInfo responseInfo) {
+        BodySubscriber<T> subscriber = delegate.apply(responseInfo);
+        return new BodySubscriber<>() {
+            @Override
+            public CompletionStage<T> getBody() {
+                return subscriber.getBody();
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> items) {
+                long count = 0;
+                for(ByteBuffer item : items)
+                    count += item.remaining();
+                bytes += count; // onNext calls never overlap
+                subscriber.onNext(items);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        };
+    }
+
+}
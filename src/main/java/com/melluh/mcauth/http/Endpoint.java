@@ -0,0 +1,42 @@
+package com.melluh.mcauth.http;
+
+import java.net.URI;
+
+// Every remote endpoint the library talks to
+public enum Endpoint {
+
+    DEVICE_CODE("https://login.microsoftonline.com/consumers/oauth2/v2.0/devicecode"),
+    TOKEN("https://login.microsoftonline.com/consumers/oauth2/v2.0/token", false), // redeems single use refresh tokens and device codes
+    XBL_TOKEN("https://user.auth.xboxlive.com/user/authenticate"),
+    XSTS_TOKEN("https://xsts.auth.xboxlive.com/xsts/authorize"),
+    LOGIN_WITH_XBOX("https://api.minecraftservices.com/authentication/login_with_xbox"),
+    PROFILE("https://api.minecraftservices.com/minecraft/profile"),
+    PROFILE_LOOKUP("https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname"),
+    PROFILE_BY_UUID("https://sessionserver.mojang.com/session/minecraft/profile"),
+    PUBLIC_KEYS("https://api.minecraftservices.com/publickeys"),
+    PLAYER_CERTIFICATES("https://api.minecraftservices.com/player/certificates"),
+    SESSION_JOIN("https://sessionserver.mojang.com/session/minecraft/join"),
+    HAS_JOINED("https://sessionserver.mojang.com/session/minecraft/hasJoined");
+
+    private final URI defaultUri;
+    private final boolean idempotent;
+
+    Endpoint(String defaultUri) {
+        this(defaultUri, true);
+    }
+
+    Endpoint(String defaultUri, boolean idempotent) {
+        this.defaultUri = URI.create(defaultUri);
+        this.idempotent = idempotent;
+    }
+
+    public URI getDefaultUri() {
+        return defaultUri;
+    }
+
+    // False if sending a request twice can have a different effect than sending it once
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.melluh.mcauth.http;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+/*
+ * HttpClient plus the per-host rate limiter and circuit breaker, shared by every authenticator that uses it.
+ * Requests to the same host share one connection pool, and over HTTP/2 concurrent requests to a host are
+ * multiplexed over a single connection.
+ *
+ * Authenticator builders use shared() unless they're given a transport or HttpClient, or set an executor or request
+ * timeout, which need a client of their own. Everything using shared() in the process shares its rate limits and
+ * circuit breaker states, so pass your own transport to keep unrelated authenticators apart.
+ */
+public class HttpTransport {
+
+    private static volatile HttpTransport shared;
+
+    private final HttpClient httpClient;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final Duration connectTimeout;
+
+    private HttpTransport(HttpClient httpClient, RateLimiter rateLimiter, CircuitBreaker circuitBreaker, Duration connectTimeout) {
+        this.httpClient = httpClient;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.connectTimeout = connectTimeout;
+    }
+
+    public static HttpTransport shared() {
+        HttpTransport transport = shared;
+        if(transport == null) {
+            synchronized (HttpTransport.class) {
+                transport = shared;
+                if(transport == null)
+                    shared = transport = createBuilder().build();
+            }
+        }
+        return transport;
+    }
+
+    // Opens connections to the hosts of all default endpoints, so the first login skips DNS and TLS setup
+    public CompletableFuture<Void> warmUp() {
+        return this.warmUp(Arrays.stream(Endpoint.values())
+                .map(Endpoint::getDefaultUri)
+                .collect(Collectors.toList()));
+    }
+
+    // Sends a HEAD request to each distinct host. Never completes exceptionally, failures only mean the host stays cold.
+    public CompletableFuture<Void> warmUp(Collection<URI> uris) {
+        Set<URI> origins = new LinkedHashSet<>();
+        for(URI uri : uris)
+            origins.add(URI.create(uri.getScheme() + "://" + uri.getAuthority() + "/"));
+
+        return CompletableFuture.allOf(origins.stream()
+                .map(origin -> httpClient.sendAsync(HttpRequest.newBuilder(origin)
+                                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                                .timeout(connectTimeout)
+                                .build(), BodyHandlers.discarding())
+                        .handle((response, ex) -> null))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public static Builder createBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private Executor executor;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private RateLimiter rateLimiter;
+        private CircuitBreaker circuitBreaker;
+
+        private Builder() {}
+
+        // Executor the HttpClient runs its own tasks on, such as delivering response bodies
+        public Builder setExecutor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor cannot be null");
+            return this;
+        }
+
+        public Builder setConnectTimeout(Duration connectTimeout) {
+            Objects.requireNonNull(connectTimeout, "connectTimeout cannot be null");
+            if(connectTimeout.isNegative() || connectTimeout.isZero())
+                throw new IllegalArgumentException("connectTimeout must be positive");
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder setRateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = Objects.requireNonNull(rateLimiter, "rateLimiter cannot be null");
+            return this;
+        }
+
+        public Builder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = Objects.requireNonNull(circuitBreaker, "circuitBreaker cannot be null");
+            return this;
+        }
+
+        public HttpTransport build() {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout);
+            if(executor != null)
+                builder.executor(executor);
+
+            return new HttpTransport(builder.build(),
+                    rateLimiter != null ? rateLimiter : new RateLimiter(),
+                    circuitBreaker != null ? circuitBreaker : new CircuitBreaker(),
+                    connectTimeout);
+        }
+
+    }
+
+}
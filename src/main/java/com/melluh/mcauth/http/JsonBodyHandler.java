@@ -0,0 +1,65 @@
+package com.melluh.mcauth.http;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.RemoteAuthenticationException;
+
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.util.function.Supplier;
+
+// Parses the response body straight from its bytes, without decoding it into a String first.
+// Bodies of 204 and 304 responses and of responses that will be retried are discarded and yield null, as do bodies that
+// are empty or not JSON. Parsers decide by status what that means, e.g. GAME_NOT_OWNED for a 404 from the profile endpoint,
+// and use requireBody where a body is needed.
+public class JsonBodyHandler<T> implements BodyHandler<T> {
+
+    public static final JsonBodyHandler<JsonObject> INSTANCE = new JsonBodyHandler<>(JsonParser::object);
+    public static final JsonBodyHandler<JsonArray> ARRAY = new JsonBodyHandler<>(JsonParser::array);
+
+    private final Supplier<JsonParser.JsonParserContext<T>> parser;
+
+    private JsonBodyHandler(Supplier<JsonParser.JsonParserContext<T>> parser) {
+        this.parser = parser;
+    }
+
+    @Override
+    public BodySubscriber<T> apply(ResponseInfo responseInfo) {
+        int statusCode = responseInfo.statusCode();
+        if(statusCode == 204 || statusCode == 304 || RequestSender.isRetryable(statusCode))
+            return BodySubscribers.replacing(null);
+
+        // Not thrown from here, an exception from the mapping would be wrapped in a CompletionException with a stack trace
+        return BodySubscribers.mapping(BodySubscribers.ofByteArray(), bytes -> {
+            if(bytes.length == 0)
+                return null;
+
+            try {
+                return parser.get().from(new ByteArrayInputStream(bytes));
+            } catch (JsonParserException ex) {
+                return null;
+            }
+        });
+    }
+
+    // Body of a response that has to have one. Without it, an error status is reported by its error code, e.g.
+    // UNAUTHORIZED for an empty 401.
+    public static <T> T requireBody(HttpResponse<T> response) {
+        T body = response.body();
+        if(body != null)
+            return body;
+
+        int statusCode = response.statusCode();
+        if(statusCode >= 400)
+            throw RemoteAuthenticationException.forStatus("Response has no JSON body", statusCode);
+        throw new RemoteAuthenticationException(AuthErrorCode.INVALID_RESPONSE, String.valueOf(statusCode), "Response has no JSON body (status code: " + statusCode + ")");
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.melluh.mcauth.http;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Token bucket pacing per host. Requests to hosts without a limit are only delayed while the host is paused.
+// Hosts are keyed like RequestSender.hostKey, so a host with an explicit port in its URI is "host:port".
+public class RateLimiter {
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public RateLimiter setLimit(String host, double requestsPerSecond, int burst) {
+        Objects.requireNonNull(host, "host cannot be null");
+        if(requestsPerSecond <= 0 || burst < 1)
+            throw new IllegalArgumentException("requestsPerSecond must be positive and burst at least 1");
+        buckets.put(host, new Bucket(requestsPerSecond, burst));
+        return this;
+    }
+
+    // Takes a permit for the host, returning how many milliseconds the caller must wait before sending
+    public long reserve(String host) {
+        Bucket bucket = buckets.get(host);
+        return bucket != null ? bucket.reserve() : 0;
+    }
+
+    // Stops handing out permits for the host until the given delay has passed, used for Retry-After. Also works for
+    // hosts without a limit, which get an unlimited bucket that only holds the pause.
+    public void pause(String host, long delayMillis) {
+        buckets.computeIfAbsent(host, key -> new Bucket()).pause(delayMillis);
+    }
+
+    private static class Bucket {
+
+        private final long interval, burst;
+        private long nextFree; // time at which the next permit becomes available
+
+        private Bucket() {
+            this.interval = 0;
+            this.burst = 1;
+            this.nextFree = System.nanoTime();
+        }
+
+        private Bucket(double requestsPerSecond, int burst) {
+            this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+            this.burst = burst;
+            this.nextFree = System.nanoTime() - burst * interval;
+        }
+
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            long start = Math.max(nextFree, now - (burst - 1) * interval);
+            this.nextFree = start + interval;
+            return TimeUnit.NANOSECONDS.toMillis(Math.max(0, start - now));
+        }
+
+        private synchronized void pause(long delayMillis) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            if(until > nextFree)
+                this.nextFree = until;
+        }
+
+    }
+
+}
@@ -0,0 +1,279 @@
+package com.melluh.mcauth.http;
+
+import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+import com.melluh.mcauth.RemoteAuthenticationException;
+import com.melluh.mcauth.metrics.AuthListener;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+// Sends requests with HttpClient.sendAsync, so no thread is held while a request is in flight
+public class RequestSender {
+
+    private final HttpClient httpClient;
+    private final Executor executor;
+    private final RetryPolicy retryPolicy;
+    private final RateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final AuthListener listener;
+    private final Map<Endpoint, URI> uris;
+    private final Map<Endpoint, Duration> timeouts;
+
+    // Response parsing runs on the given executor, or on the HttpClient's own executor if null
+    // Endpoints without an entry in uris use their default URI, those without an entry in timeouts have no request timeout
+    public RequestSender(HttpClient httpClient, Executor executor, RetryPolicy retryPolicy, RateLimiter rateLimiter,
+                         CircuitBreaker circuitBreaker, AuthListener listener, Map<Endpoint, URI> uris, Map<Endpoint, Duration> timeouts) {
+        this.httpClient = httpClient;
+        this.executor = executor;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.listener = listener;
+        this.uris = Map.copyOf(uris);
+        this.timeouts = Map.copyOf(timeouts);
+    }
+
+    public URI getUri(Endpoint endpoint) {
+        return uris.getOrDefault(endpoint, endpoint.getDefaultUri());
+    }
+
+    // Request builder for the endpoint with its URI and timeout already set
+    public HttpRequest.Builder newRequest(Endpoint endpoint) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(this.getUri(endpoint));
+        Duration timeout = timeouts.get(endpoint);
+        if(timeout != null)
+            builder.timeout(timeout);
+        return builder;
+    }
+
+    // Responses with status 429 or 5xx never reach the parser. They are retried according to the retry policy, for
+    // endpoints that are not idempotent only 429 and 503.
+    public <B, T> CompletableFuture<T> send(Endpoint endpoint, HttpRequest request, BodyHandler<B> bodyHandler, ResponseParser<B, T> parser, String errorMessage) {
+        // Completed directly, an exception thrown from a stage would be wrapped in a CompletionException with a stack trace
+        CompletableFuture<T> result = new CompletableFuture<>();
+        BiConsumer<HttpResponse<B>, Throwable> handler = (response, ex) -> {
+            try {
+                result.complete(parse(response, ex, parser, errorMessage));
+            } catch (Throwable ex2) {
+                result.completeExceptionally(ex2);
+            }
+        };
+
+        CompletableFuture<HttpResponse<B>> future = this.attempt(endpoint, request, bodyHandler, 1);
+        if(executor == null) {
+            future.whenComplete(handler);
+        } else {
+            future.whenCompleteAsync(handler, executor);
+        }
+        return result;
+    }
+
+    private static <B, T> T parse(HttpResponse<B> response, Throwable ex, ResponseParser<B, T> parser, String errorMessage) {
+        if(ex != null) {
+            Throwable cause = unwrap(ex);
+            if(cause instanceof AuthenticationException authEx)
+                throw authEx;
+            throw new RemoteAuthenticationException(AuthErrorCode.of(cause), null, errorMessage, cause);
+        }
+
+        if(isRetryable(response.statusCode()))
+            throw RemoteAuthenticationException.forStatus(errorMessage, response.statusCode());
+
+        try {
+            return parser.parse(response);
+        } catch (AuthenticationException ex2) {
+            throw ex2;
+        } catch (JsonParserException | RuntimeException ex2) {
+            // Unexpected body, e.g. a missing field. For an error status, the status says more than the body.
+            if(response.statusCode() >= 400)
+                throw RemoteAuthenticationException.forStatus(errorMessage, response.statusCode());
+            throw new RemoteAuthenticationException(AuthErrorCode.INVALID_RESPONSE, null, errorMessage, ex2);
+        }
+    }
+
+    /*
+     * Starts a second call if the first has not completed after the delay and returns whichever succeeds first.
+     * Only meant for idempotent requests. Fails as soon as the first call fails if the second was not started yet.
+     */
+    public <T> CompletableFuture<T> hedge(Supplier<CompletableFuture<T>> call, Duration delay) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        BiConsumer<T, Throwable> complete = (value, ex) -> {
+            if(ex == null) {
+                result.complete(value);
+            } else if(pending.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        };
+
+        call.get().whenComplete(complete);
+        CompletableFuture.runAsync(() -> {
+            if(!result.isDone() && pending.getAndUpdate(count -> count > 0 ? count + 1 : count) > 0)
+                call.get().whenComplete(complete);
+        }, this.delayed(delay.toMillis()));
+        return result;
+    }
+
+    private <B> CompletableFuture<HttpResponse<B>> attempt(Endpoint endpoint, HttpRequest request, BodyHandler<B> bodyHandler, int attempt) {
+        String host = hostKey(request.uri());
+        if(!circuitBreaker.tryAcquire(host))
+            return CompletableFuture.failedFuture(new CircuitOpenException(host));
+
+        long wait = rateLimiter.reserve(host);
+        CompletableFuture<HttpResponse<B>> future = wait > 0
+                ? CompletableFuture.supplyAsync(() -> null, this.delayed(wait)).thenCompose(ignored -> this.sendOnce(endpoint, request, bodyHandler))
+                : this.sendOnce(endpoint, request, bodyHandler);
+
+        return future.handle((response, ex) -> {
+            if(!retryPolicy.shouldRetry(attempt))
+                return future;
+
+            long delay;
+            if(ex != null) {
+                if(!isRetryable(endpoint, unwrap(ex)))
+                    return future;
+                delay = retryPolicy.getDelay(attempt);
+            } else if(isRetryable(endpoint, response.statusCode())) {
+                // Capped, so a broken or hostile header can't hold back every request to the host indefinitely
+                long retryAfter = Math.min(retryAfter(response), retryPolicy.getMaxDelay());
+                if(retryAfter >= 0)
+                    rateLimiter.pause(host, retryAfter);
+                delay = Math.max(retryAfter, retryPolicy.getDelay(attempt));
+            } else {
+                return future;
+            }
+
+            listener.onRetry(endpoint, attempt, delay);
+            return CompletableFuture.supplyAsync(() -> null, this.delayed(delay))
+                    .thenCompose(ignored -> this.attempt(endpoint, request, bodyHandler, attempt + 1));
+        }).thenCompose(next -> next);
+    }
+
+    private <B> CompletableFuture<HttpResponse<B>> sendOnce(Endpoint endpoint, HttpRequest request, BodyHandler<B> bodyHandler) {
+        String host = hostKey(request.uri());
+        // Only a host that can't be reached or that reports an overload counts as failing. Errors from parsing the
+        // body, e.g. an empty 401 for a revoked token, come from a working host and are specific to one account.
+        return this.sendObserved(endpoint, request, bodyHandler).whenComplete((response, ex) -> {
+            if(ex != null ? unwrap(ex) instanceof IOException : isRetryable(response.statusCode())) {
+                circuitBreaker.recordFailure(host);
+            } else {
+                circuitBreaker.recordSuccess(host);
+            }
+        });
+    }
+
+    private <B> CompletableFuture<HttpResponse<B>> sendObserved(Endpoint endpoint, HttpRequest request, BodyHandler<B> bodyHandler) {
+        if(listener == AuthListener.NONE)
+            return httpClient.sendAsync(request, bodyHandler);
+
+        CountingBodyHandler<B> countingHandler = new CountingBodyHandler<>(bodyHandler);
+        long bytesSent = request.bodyPublisher().map(BodyPublisher::contentLength).orElse(0L);
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, countingHandler).whenComplete((response, ex) -> {
+            long latency = System.nanoTime() - start;
+            if(ex != null) {
+                listener.onFailure(endpoint, unwrap(ex), latency);
+            } else {
+                listener.onResponse(endpoint, response.statusCode(), latency, bytesSent, countingHandler.getBytes());
+            }
+        });
+    }
+
+    private Executor delayed(long delayMillis) {
+        return executor == null
+                ? CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS)
+                : CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor);
+    }
+
+    // Key for the rate limiter and circuit breaker, includes the port if the URI has one so local servers stay apart
+    public static String hostKey(URI uri) {
+        return uri.getPort() != -1 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+    }
+
+    // A request that timed out or lost its connection may have been processed, so only idempotent ones are sent again
+    private static boolean isRetryable(Endpoint endpoint, Throwable ex) {
+        if(ex instanceof ConnectException || ex instanceof HttpConnectTimeoutException)
+            return true;
+        return ex instanceof IOException && endpoint.isIdempotent();
+    }
+
+    // 429 and 503 mean the request was turned away, other 5xx statuses may come after it was processed
+    private static boolean isRetryable(Endpoint endpoint, int statusCode) {
+        if(statusCode == 429 || statusCode == 503)
+            return true;
+        return isRetryable(statusCode) && endpoint.isIdempotent();
+    }
+
+    static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date, returns -1 if absent or invalid
+    private static long retryAfter(HttpResponse<?> response) {
+        Optional<String> header = response.headers().firstValue("Retry-After");
+        if(header.isEmpty())
+            return -1;
+
+        String value = header.get().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException ex) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), date).toMillis());
+            } catch (DateTimeParseException ex2) {
+                return -1;
+            }
+        }
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public AuthListener getListener() {
+        return listener;
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        while(ex instanceof CompletionException && ex.getCause() != null)
+            ex = ex.getCause();
+        return ex;
+    }
+
+    @FunctionalInterface
+    public interface ResponseParser<B, T> {
+        T parse(HttpResponse<B> response) throws JsonParserException;
+    }
+
+}
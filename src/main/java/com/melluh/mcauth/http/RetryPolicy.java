@@ -0,0 +1,105 @@
+package com.melluh.mcauth.http;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Exponential backoff with jitter for requests that failed with a connection error, 429 or 5xx response
+public class RetryPolicy {
+
+    private static final RetryPolicy NONE = createBuilder().setMaxAttempts(1).build();
+    private static final RetryPolicy DEFAULT = createBuilder().build();
+
+    private final int maxAttempts;
+    private final long initialDelay, maxDelay;
+    private final double multiplier, jitter;
+
+    private RetryPolicy(int maxAttempts, long initialDelay, long maxDelay, double multiplier, double jitter) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    public static RetryPolicy none() {
+        return NONE;
+    }
+
+    public static RetryPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    public boolean shouldRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    // Delay before the given retry (starting at 1), in milliseconds
+    public long getDelay(int retry) {
+        double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, retry - 1));
+        double spread = delay * jitter;
+        return (long) (delay - spread + ThreadLocalRandom.current().nextDouble() * spread * 2);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public static Builder createBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private int maxAttempts = 3;
+        private Duration initialDelay = Duration.ofMillis(500);
+        private Duration maxDelay = Duration.ofSeconds(30);
+        private double multiplier = 2;
+        private double jitter = 0.5;
+
+        private Builder() {}
+
+        // Total number of attempts, including the first one
+        public Builder setMaxAttempts(int maxAttempts) {
+            if(maxAttempts < 1)
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder setInitialDelay(Duration initialDelay) {
+            this.initialDelay = Objects.requireNonNull(initialDelay, "initialDelay cannot be null");
+            return this;
+        }
+
+        public Builder setMaxDelay(Duration maxDelay) {
+            this.maxDelay = Objects.requireNonNull(maxDelay, "maxDelay cannot be null");
+            return this;
+        }
+
+        public Builder setMultiplier(double multiplier) {
+            if(multiplier < 1)
+                throw new IllegalArgumentException("multiplier must be at least 1");
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        // Fraction of the delay that is randomized in both directions, between 0 and 1
+        public Builder setJitter(double jitter) {
+            if(jitter < 0 || jitter > 1)
+                throw new IllegalArgumentException("jitter must be between 0 and 1");
+            this.jitter = jitter;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(maxAttempts, initialDelay.toMillis(), maxDelay.toMillis(), multiplier, jitter);
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.melluh.mcauth.http;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VirtualThreads {
+
+    private static final MethodHandle NEW_EXECUTOR = findFactory();
+
+    private VirtualThreads() {}
+
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    // Falls back to a cached pool of daemon platform threads on runtimes without virtual threads (Java 20 and older)
+    public static ExecutorService newExecutor() {
+        if(NEW_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_EXECUTOR.invokeExact();
+            } catch (Throwable ex) {
+                throw new IllegalStateException("Failed to create virtual thread executor", ex);
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mc-auth-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // On Java 19 and 20 the method exists as a preview API and throws UnsupportedOperationException without
+    // --enable-preview, so it is tried once before it's used
+    private static MethodHandle findFactory() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            ((ExecutorService) factory.invokeExact()).shutdown();
+            return factory;
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.melluh.mcauth.metrics;
+
+import com.melluh.mcauth.http.Endpoint;
+
+// Receives an event for every request attempt. All methods are called on HTTP client threads and must not block.
+public interface AuthListener {
+
+    AuthListener NONE = new AuthListener() {};
+
+    // A response was received, bytesSent is -1 if the request body length is unknown
+    default void onResponse(Endpoint endpoint, int statusCode, long latencyNanos, long bytesSent, long bytesReceived) {}
+
+    // The request failed without a response, e.g. a connection error
+    default void onFailure(Endpoint endpoint, Throwable error, long latencyNanos) {}
+
+    // The request will be sent again after the delay, attempt is the number of the attempt that failed
+    default void onRetry(Endpoint endpoint, int attempt, long delayMillis) {}
+
+    // Xbox Live returned an XErr code
+    default void onXboxError(Endpoint endpoint, long code) {}
+
+}
@@ -0,0 +1,122 @@
+package com.melluh.mcauth.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Lock-free log-linear histogram in the style of HdrHistogram. Values are recorded in microseconds
+ * into buckets per power of two, each split into 32 linear sub-buckets, so every recorded value is
+ * accurate to about 3%. Values above 2^45 microseconds (about a year) all land in the last bucket.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_MAGNITUDE + 1) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder(), sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(indexOf(micros));
+        count.increment();
+        sum.add(micros);
+        min.accumulate(micros);
+        max.accumulate(micros);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        for(int i = 0; i < copy.length; i++)
+            copy[i] = counts.get(i);
+        long total = count.sum();
+        return new Snapshot(copy, total, total > 0 ? min.get() : 0, max.get(), total > 0 ? (double) sum.sum() / total : 0);
+    }
+
+    public void reset() {
+        for(int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        min.reset();
+        max.reset();
+    }
+
+    // Values below 32 get a bucket each, above that the top 5 bits below the highest set bit select the sub-bucket
+    private static int indexOf(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        if(magnitude > MAX_MAGNITUDE)
+            return (MAX_MAGNITUDE + 1) * SUB_BUCKETS - 1;
+        int subBucket = (int) (value >>> (magnitude - 1)) - SUB_BUCKETS;
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    // Highest value that maps to the bucket
+    private static long valueOf(int index) {
+        int magnitude = index / SUB_BUCKETS, subBucket = index % SUB_BUCKETS;
+        if(magnitude == 0)
+            return subBucket;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - 1)) - 1;
+    }
+
+    // All values are in microseconds
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count, min, max;
+        private final double mean;
+
+        private Snapshot(long[] counts, long count, long min, long max, double mean) {
+            this.counts = counts;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        // Percentile between 0 and 100
+        public long getPercentile(double percentile) {
+            if(count == 0)
+                return 0;
+            long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= target)
+                    return Math.min(valueOf(i), max);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", min=" + min + "us, p50=" + this.getPercentile(50) + "us, p99=" + this.getPercentile(99) +
+                    "us, p99.9=" + this.getPercentile(99.9) + "us, max=" + max + "us";
+        }
+
+    }
+
+}
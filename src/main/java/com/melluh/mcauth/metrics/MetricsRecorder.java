@@ -0,0 +1,97 @@
+package com.melluh.mcauth.metrics;
+
+import com.melluh.mcauth.http.Endpoint;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// In-process AuthListener that keeps latency histograms and counters per endpoint
+public class MetricsRecorder implements AuthListener {
+
+    private final Map<Endpoint, EndpointMetrics> metrics = new EnumMap<>(Endpoint.class);
+
+    public MetricsRecorder() {
+        for(Endpoint endpoint : Endpoint.values())
+            metrics.put(endpoint, new EndpointMetrics());
+    }
+
+    @Override
+    public void onResponse(Endpoint endpoint, int statusCode, long latencyNanos, long bytesSent, long bytesReceived) {
+        EndpointMetrics endpointMetrics = metrics.get(endpoint);
+        endpointMetrics.latency.record(latencyNanos);
+        endpointMetrics.statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+        if(bytesSent > 0)
+            endpointMetrics.bytesSent.add(bytesSent);
+        endpointMetrics.bytesReceived.add(bytesReceived);
+    }
+
+    @Override
+    public void onFailure(Endpoint endpoint, Throwable error, long latencyNanos) {
+        EndpointMetrics endpointMetrics = metrics.get(endpoint);
+        endpointMetrics.latency.record(latencyNanos);
+        endpointMetrics.failures.increment();
+    }
+
+    @Override
+    public void onRetry(Endpoint endpoint, int attempt, long delayMillis) {
+        metrics.get(endpoint).retries.increment();
+    }
+
+    @Override
+    public void onXboxError(Endpoint endpoint, long code) {
+        metrics.get(endpoint).xboxErrors.computeIfAbsent(code, key -> new LongAdder()).increment();
+    }
+
+    public EndpointSnapshot snapshot(Endpoint endpoint) {
+        return metrics.get(endpoint).snapshot();
+    }
+
+    public Map<Endpoint, EndpointSnapshot> snapshot() {
+        Map<Endpoint, EndpointSnapshot> snapshots = new EnumMap<>(Endpoint.class);
+        metrics.forEach((endpoint, endpointMetrics) -> snapshots.put(endpoint, endpointMetrics.snapshot()));
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    public void reset() {
+        metrics.values().forEach(EndpointMetrics::reset);
+    }
+
+    private static class EndpointMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+        private final Map<Long, LongAdder> xboxErrors = new ConcurrentHashMap<>();
+        private final LongAdder failures = new LongAdder(), retries = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder(), bytesReceived = new LongAdder();
+
+        private EndpointSnapshot snapshot() {
+            return new EndpointSnapshot(latency.snapshot(), sum(statusCodes), sum(xboxErrors), failures.sum(), retries.sum(),
+                    bytesSent.sum(), bytesReceived.sum());
+        }
+
+        private void reset() {
+            latency.reset();
+            statusCodes.clear();
+            xboxErrors.clear();
+            failures.reset();
+            retries.reset();
+            bytesSent.reset();
+            bytesReceived.reset();
+        }
+
+        private static <K> Map<K, Long> sum(Map<K, LongAdder> counters) {
+            Map<K, Long> sums = new TreeMap<>();
+            counters.forEach((key, adder) -> sums.put(key, adder.sum()));
+            return Collections.unmodifiableMap(sums);
+        }
+
+    }
+
+    public record EndpointSnapshot(LatencyHistogram.Snapshot latency, Map<Integer, Long> statusCodes, Map<Long, Long> xboxErrors,
+                                   long failures, long retries, long bytesSent, long bytesReceived) {}
+
+}
@@ -0,0 +1,10 @@
+package com.melluh.mcauth.profile;
+
+// Signature is null when the property was requested unsigned
+public record ProfileProperty(String name, String value, String signature) {
+
+    public boolean isSigned() {
+        return signature != null;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.melluh.mcauth.profile;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
+// Checks profile property signatures (SHA1withRSA over the base64 value) against Yggdrasil's property keys
+public class PropertyVerifier {
+
+    private static final ThreadLocal<Signature> SHA1_WITH_RSA = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA1withRSA");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("SHA1withRSA signature algorithm not available", ex);
+        }
+    });
+
+    private final List<PublicKey> keys;
+
+    public PropertyVerifier(Collection<PublicKey> keys) {
+        if(keys.isEmpty())
+            throw new IllegalArgumentException("keys cannot be empty");
+        this.keys = List.copyOf(keys);
+    }
+
+    // Reads the profilePropertyKeys of a response from the public keys endpoint
+    public static PropertyVerifier fromPublicKeys(JsonObject json) {
+        JsonArray keysJson = json.getArray("profilePropertyKeys", new JsonArray());
+        List<PublicKey> keys = new ArrayList<>(keysJson.size());
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            for(int i = 0; i < keysJson.size(); i++) {
+                byte[] encoded = Base64.getDecoder().decode(keysJson.getObject(i).getString("publicKey"));
+                keys.add(keyFactory.generatePublic(new X509EncodedKeySpec(encoded)));
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Failed to parse profile property keys", ex);
+        }
+
+        if(keys.isEmpty())
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Response has no profile property keys");
+        return new PropertyVerifier(keys);
+    }
+
+    // Unsigned properties never verify
+    public boolean verify(ProfileProperty property) {
+        if(!property.isSigned())
+            return false;
+
+        byte[] signatureBytes;
+        try {
+            signatureBytes = Base64.getDecoder().decode(property.signature());
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+
+        byte[] value = property.value().getBytes(StandardCharsets.US_ASCII);
+        Signature signature = SHA1_WITH_RSA.get();
+        for(PublicKey key : keys) {
+            try {
+                signature.initVerify(key);
+                signature.update(value);
+                if(signature.verify(signatureBytes))
+                    return true;
+            } catch (GeneralSecurityException ex) {
+                // malformed signature for this key, try the next one
+            }
+        }
+        return false;
+    }
+
+    // True if every property of the profile is signed by one of the keys
+    public boolean verify(SignedProfile profile) {
+        for(ProfileProperty property : profile.properties()) {
+            if(!this.verify(property))
+                return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.melluh.mcauth.profile;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.melluh.mcauth.utils.AuthUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Profile as returned by the session server, including its properties
+public record SignedProfile(UUID uuid, String username, List<ProfileProperty> properties) {
+
+    public static SignedProfile fromJson(JsonObject json) {
+        JsonArray propertiesJson = json.getArray("properties", new JsonArray());
+        List<ProfileProperty> properties = new ArrayList<>(propertiesJson.size());
+        for(int i = 0; i < propertiesJson.size(); i++) {
+            JsonObject property = propertiesJson.getObject(i);
+            properties.add(new ProfileProperty(property.getString("name"), property.getString("value"), property.getString("signature", null)));
+        }
+        return new SignedProfile(AuthUtils.parseMojangUuid(json.getString("id")), json.getString("name"), Collections.unmodifiableList(properties));
+    }
+
+    public Optional<ProfileProperty> getProperty(String name) {
+        for(ProfileProperty property : properties) {
+            if(property.name().equals(name))
+                return Optional.of(property);
+        }
+        return Optional.empty();
+    }
+
+    public Optional<Textures> getTextures() {
+        return this.getProperty("textures").map(property -> Textures.decode(property.value()));
+    }
+
+}
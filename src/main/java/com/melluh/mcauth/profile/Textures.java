@@ -0,0 +1,57 @@
+package com.melluh.mcauth.profile;
+
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+import com.melluh.mcauth.utils.AuthUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+// Decoded value of a profile's "textures" property, skin and cape are null if the player has none
+public record Textures(long timestamp, UUID profileId, String profileName, Texture skin, Texture cape) {
+
+    public static Textures decode(String base64) {
+        JsonObject json;
+        try {
+            json = JsonParser.object().from(new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8));
+        } catch (JsonParserException | IllegalArgumentException ex) {
+            // bad base64 or JSON
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Failed to decode textures property", ex);
+        }
+
+        JsonObject textures = json.getObject("textures", null);
+        if(!json.isNumber("timestamp") || !json.isString("profileId") || !json.isString("profileName") || textures == null)
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Textures property is missing fields");
+
+        UUID profileId;
+        try {
+            profileId = AuthUtils.parseMojangUuid(json.getString("profileId"));
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Textures property has an invalid profile id", ex);
+        }
+
+        return new Textures(json.getLong("timestamp"), profileId, json.getString("profileName"),
+                Texture.fromJson(textures.getObject("SKIN", null)), Texture.fromJson(textures.getObject("CAPE", null)));
+    }
+
+    public boolean hasSlimSkin() {
+        return skin != null && "slim".equals(skin.model());
+    }
+
+    // Model is only present for slim skins
+    public record Texture(String url, String model) {
+        private static Texture fromJson(JsonObject json) {
+            if(json == null)
+                return null;
+            if(!json.isString("url"))
+                throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Texture has no URL");
+            JsonObject metadata = json.getObject("metadata", null);
+            return new Texture(json.getString("url"), metadata != null ? metadata.getString("model", null) : null);
+        }
+    }
+
+}
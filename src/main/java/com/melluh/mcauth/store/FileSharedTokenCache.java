@@ -0,0 +1,182 @@
+package com.melluh.mcauth.store;
+
+import com.melluh.mcauth.tokens.Token;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Shared cache in a directory that several processes on one machine (or on a shared file system with working
+ * locks) open at the same time. Every operation holds an exclusive lock on the directory's lock file, and each
+ * key is a file that is replaced atomically. Tokens are stored unencrypted, so protect the directory with file
+ * permissions.
+ *
+ * File layout: version (long), lease owner (UTF, empty if none), lease expiry (long), encoded token length
+ * (int, -1 if removed), encoded token.
+ */
+public class FileSharedTokenCache implements SharedTokenCache {
+
+    // FileLock is held per JVM, so threads and instances on the same directory also need an in-process lock
+    private static final Map<Path, ReentrantLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final ReentrantLock localLock;
+
+    public FileSharedTokenCache(Path directory) throws IOException {
+        this.directory = directory.toAbsolutePath().normalize();
+        Files.createDirectories(this.directory);
+        this.lockChannel = FileChannel.open(this.directory.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.localLock = LOCAL_LOCKS.computeIfAbsent(this.directory, path -> new ReentrantLock());
+    }
+
+    @Override
+    public Entry get(String key) {
+        Slot slot = this.locked(() -> this.read(key));
+        return slot != null && slot.token != null ? new Entry(slot.token, slot.version) : null;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long expectedVersion, Token token) {
+        Objects.requireNonNull(token, "token cannot be null");
+        return this.locked(() -> {
+            Slot slot = this.read(key);
+            long version = slot != null && slot.token != null ? slot.version : 0;
+            if(version != expectedVersion)
+                return false;
+            this.write(key, slot != null
+                    ? new Slot(token, slot.version + 1, slot.leaseOwner, slot.leaseExpiry)
+                    : new Slot(token, 1, null, 0));
+            return true;
+        });
+    }
+
+    @Override
+    public void remove(String key) {
+        this.locked(() -> {
+            Slot slot = this.read(key);
+            if(slot != null && slot.token != null)
+                this.write(key, new Slot(null, slot.version + 1, slot.leaseOwner, slot.leaseExpiry));
+            return null;
+        });
+    }
+
+    @Override
+    public boolean tryAcquireLease(String key, String owner, Duration duration) {
+        Objects.requireNonNull(owner, "owner cannot be null");
+        if(owner.isEmpty())
+            throw new IllegalArgumentException("owner cannot be empty");
+        return this.locked(() -> {
+            long now = System.currentTimeMillis();
+            Slot slot = this.read(key);
+            if(slot != null && slot.leaseOwner != null && !slot.leaseOwner.equals(owner) && slot.leaseExpiry > now)
+                return false;
+            this.write(key, slot != null
+                    ? new Slot(slot.token, slot.version, owner, now + duration.toMillis())
+                    : new Slot(null, 0, owner, now + duration.toMillis()));
+            return true;
+        });
+    }
+
+    @Override
+    public void releaseLease(String key, String owner) {
+        this.locked(() -> {
+            Slot slot = this.read(key);
+            if(slot != null && owner.equals(slot.leaseOwner))
+                this.write(key, new Slot(slot.token, slot.version, null, 0));
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        try {
+            lockChannel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to close shared token cache " + directory, ex);
+        }
+    }
+
+    private <T> T locked(IOSupplier<T> action) {
+        localLock.lock();
+        try {
+            FileLock fileLock = lockChannel.lock();
+            try {
+                return action.get();
+            } finally {
+                fileLock.release();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to access shared token cache " + directory, ex);
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    private Slot read(String key) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(this.pathOf(key));
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        long version = in.readLong();
+        String leaseOwner = in.readUTF();
+        long leaseExpiry = in.readLong();
+        int length = in.readInt();
+        Token token = length >= 0 ? TokenCodec.decode(in.readNBytes(length)) : null;
+        return new Slot(token, version, leaseOwner.isEmpty() ? null : leaseOwner, leaseExpiry);
+    }
+
+    private void write(String key, Slot slot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(slot.version);
+        out.writeUTF(slot.leaseOwner != null ? slot.leaseOwner : "");
+        out.writeLong(slot.leaseExpiry);
+        if(slot.token != null) {
+            byte[] encoded = TokenCodec.encode(slot.token);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        } else {
+            out.writeInt(-1);
+        }
+
+        Path target = this.pathOf(key);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path pathOf(String key) {
+        return directory.resolve(Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8)) + ".token");
+    }
+
+    private record Slot(Token token, long version, String leaseOwner, long leaseExpiry) {}
+
+    @FunctionalInterface
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+}
@@ -0,0 +1,556 @@
+package com.melluh.mcauth.store;
+
+import com.melluh.mcauth.tokens.Token;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only log of token records. Opening the store checks every record to build an index of
+ * keys, values are decrypted and decoded the first time they are requested.
+ *
+ * File header: magic (int), flags (byte). Record layout: length (int), CRC32 of the rest (int),
+ * operation (byte), key length (short), key, and for puts: expiry time (long), payload. The payload
+ * is the encoded token, encrypted with AES-GCM (12 byte IV + ciphertext) if the encrypted flag is set.
+ * A torn record at the end of the file, e.g. after a crash, is cut off on the next open. A corrupt
+ * record anywhere else is skipped with a warning, the records after it are kept.
+ */
+public class FileTokenStore implements TokenStore {
+
+    private static final int MAGIC = 0x4D435453; // "MCTS"
+    private static final int HEADER_SIZE = 5;
+    private static final byte FLAG_ENCRYPTED = 1;
+    private static final int MIN_RECORD_LENGTH = 4 + 1 + 2; // CRC, operation and key length
+    private static final byte OP_PUT = 1, OP_REMOVE = 2;
+    private static final int IV_LENGTH = 12, TAG_BITS = 128;
+    private static final int MAX_KEY_LENGTH = 0xFFFF; // stored as an unsigned short
+    private static final long MIN_COMPACTION_GARBAGE = 64 * 1024; // small logs aren't worth rewriting
+
+    private static final System.Logger LOGGER = System.getLogger(FileTokenStore.class.getName());
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SecureRandom random = new SecureRandom();
+
+    private final Path path;
+    private final SecretKey encryptionKey;
+    private final boolean syncWrites;
+    private final double compactionRatio;
+    private final ScheduledExecutorService compactionScheduler;
+
+    private FileChannel channel;
+    private FileLock fileLock;
+    private long size, liveBytes;
+
+    private FileTokenStore(Path path, SecretKey encryptionKey, boolean syncWrites, double compactionRatio, Duration compactionInterval) throws IOException {
+        this.path = path;
+        this.encryptionKey = encryptionKey;
+        this.syncWrites = syncWrites;
+        this.compactionRatio = compactionRatio;
+        this.open();
+
+        if(compactionInterval != null) {
+            this.compactionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mc-auth-token-store-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = compactionInterval.toMillis();
+            compactionScheduler.scheduleWithFixedDelay(this::compactInBackground, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.compactionScheduler = null;
+        }
+    }
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.fileLock = lock(channel, path);
+            if(channel.size() == 0) {
+                channel.write(this.header(), 0);
+                channel.force(true);
+            } else {
+                this.checkHeader();
+            }
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+
+        index.clear();
+        this.liveBytes = 0;
+        this.size = this.scan();
+        if(size < channel.size()) {
+            // Torn write at the end of the log
+            channel.truncate(size);
+            channel.force(true);
+        }
+    }
+
+    private static FileLock lock(FileChannel channel, Path path) throws IOException {
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            fileLock = null; // locked by another store in this JVM
+        }
+        if(fileLock == null)
+            throw new IOException("Token store " + path + " is in use by another process");
+        return fileLock;
+    }
+
+    private ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(encryptionKey != null ? FLAG_ENCRYPTED : 0).flip();
+    }
+
+    // Values can't be read with the wrong setting, and writing them would mix plain and encrypted records
+    private void checkHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if(header.position() < HEADER_SIZE || header.getInt(0) != MAGIC)
+            throw new IOException(path + " is not a token store");
+
+        boolean encrypted = (header.get(4) & FLAG_ENCRYPTED) != 0;
+        if(encrypted && encryptionKey == null)
+            throw new IOException("Token store " + path + " is encrypted, but no encryption key was set");
+        if(!encrypted && encryptionKey != null)
+            throw new IOException("Token store " + path + " is not encrypted, but an encryption key was set");
+    }
+
+    // Reads and checks all records, returns the offset right after the last complete record
+    private long scan() throws IOException {
+        long fileSize = channel.size();
+        long pos = HEADER_SIZE;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+        while(pos + 4 <= fileSize) {
+            lengthBuffer.clear();
+            channel.read(lengthBuffer, pos);
+            int length = lengthBuffer.getInt(0);
+            if(length < MIN_RECORD_LENGTH) {
+                // Without a valid length the next record can't be found. Zeros are what a crash mid-append can leave.
+                if(this.isZeroFilled(pos, fileSize))
+                    break;
+                throw new IOException("Token store " + path + " has a corrupt record at offset " + pos);
+            }
+            if(pos + 4 + length > fileSize)
+                break;
+
+            ByteBuffer record = ByteBuffer.allocate(length);
+            channel.read(record, pos + 4);
+            record.flip();
+            int crc = record.getInt();
+            if(crc != crc(record) || !isWellFormed(record)) {
+                if(pos + 4 + length == fileSize)
+                    break; // partly written last record
+
+                // Counts as garbage, so the next compaction drops it
+                LOGGER.log(System.Logger.Level.WARNING, "Skipping corrupt record at offset " + pos + " in token store " + path);
+                pos += 4 + length;
+                continue;
+            }
+
+            byte op = record.get();
+            String key = readKey(record);
+            Location previous = op == OP_PUT
+                    ? index.put(key, new Location(pos, 4 + length, record.getLong()))
+                    : index.remove(key);
+            if(previous != null)
+                liveBytes -= previous.length;
+            if(op == OP_PUT)
+                liveBytes += 4 + length;
+            pos += 4 + length;
+        }
+        return pos;
+    }
+
+    private boolean isZeroFilled(long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for(long pos = from; pos < to; pos += buffer.limit()) {
+            buffer.clear();
+            if(channel.read(buffer, pos) <= 0)
+                return true;
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                if(buffer.get() != 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether the fields after the CRC fit the record, checked so a record that happens to match its CRC can't throw
+    private static boolean isWellFormed(ByteBuffer record) {
+        ByteBuffer fields = record.duplicate();
+        byte op = fields.get();
+        int keyLength = fields.getShort() & 0xFFFF;
+        if(op == OP_PUT)
+            return fields.remaining() >= keyLength + 8;
+        return op == OP_REMOVE && fields.remaining() == keyLength;
+    }
+
+    @Override
+    public void put(String key, Token token) {
+        Objects.requireNonNull(key, "key cannot be null");
+        Objects.requireNonNull(token, "token cannot be null");
+
+        byte[] keyBytes = keyBytes(key);
+        byte[] payload = this.encrypt(TokenCodec.encode(token), keyBytes);
+        ByteBuffer record = ByteBuffer.allocate(4 + 4 + 1 + 2 + keyBytes.length + 8 + payload.length);
+        record.putInt(record.capacity() - 4).putInt(0).put(OP_PUT).putShort((short) keyBytes.length).put(keyBytes)
+                .putLong(token.getExpiryTime()).put(payload);
+
+        lock.writeLock().lock();
+        try {
+            long pos = this.append(record);
+            Location location = new Location(pos, record.capacity(), token.getExpiryTime());
+            location.token = token;
+            Location previous = index.put(key, location);
+            if(previous != null)
+                liveBytes -= previous.length;
+            liveBytes += location.length;
+            this.compactAfterWrite();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Token get(String key) {
+        Location location = index.get(key);
+        if(location == null)
+            return null;
+
+        Token token = location.token;
+        if(token != null)
+            return token;
+
+        lock.readLock().lock();
+        try {
+            // Re-read the location, compaction may have moved the record
+            location = index.get(key);
+            if(location == null)
+                return null;
+            token = this.readToken(key, location);
+            location.token = token;
+            return token;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        byte[] keyBytes = keyBytes(key);
+        ByteBuffer record = ByteBuffer.allocate(4 + 4 + 1 + 2 + keyBytes.length);
+        record.putInt(record.capacity() - 4).putInt(0).put(OP_REMOVE).putShort((short) keyBytes.length).put(keyBytes);
+
+        lock.writeLock().lock();
+        try {
+            if(!index.containsKey(key))
+                return;
+            this.append(record);
+            liveBytes -= index.remove(key).length;
+            this.compactAfterWrite();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    // Expiry time of the stored token, read from the index without decoding the value. Returns -1 if absent.
+    public long getExpiryTime(String key) {
+        Location location = index.get(key);
+        return location != null ? location.expiryTime : -1;
+    }
+
+    // Compacts once the overwritten and removed records outweigh the live ones by the compaction ratio
+    public void compactIfNeeded() {
+        lock.writeLock().lock();
+        try {
+            if(this.needsCompaction())
+                this.compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller must hold the write lock
+    private boolean needsCompaction() {
+        long garbage = size - HEADER_SIZE - liveBytes;
+        return garbage >= MIN_COMPACTION_GARBAGE && garbage >= liveBytes * compactionRatio;
+    }
+
+    // The write itself already succeeded, so a failed compaction is only logged and tried again on a later write
+    private void compactAfterWrite() {
+        if(!this.needsCompaction())
+            return;
+        try {
+            this.compact();
+        } catch (UncheckedIOException ex) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to compact token store " + path, ex);
+        }
+    }
+
+    // An exception would cancel every later run of the scheduled task
+    private void compactInBackground() {
+        try {
+            this.compactIfNeeded();
+        } catch (RuntimeException ex) {
+            LOGGER.log(System.Logger.Level.WARNING, "Failed to compact token store " + path, ex);
+        }
+    }
+
+    /*
+     * Rewrites the log with only the live records, then atomically replaces the old file. The new file is locked
+     * before it's moved into place and the old one is only unlocked after, so another process can't open the store
+     * in between. Where an open file can't be replaced the move fails, and the store keeps using the old log.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            Path tempPath = path.resolveSibling(path.getFileName() + ".compact");
+            FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            FileLock outLock;
+            Map<String, Location> moved = new HashMap<>();
+            long pos;
+            try {
+                outLock = lock(out, tempPath);
+                pos = out.write(this.header(), 0);
+                for(Map.Entry<String, Location> entry : index.entrySet()) {
+                    Location location = entry.getValue();
+                    ByteBuffer record = ByteBuffer.allocate(location.length);
+                    channel.read(record, location.offset);
+                    record.flip();
+                    while(record.hasRemaining())
+                        out.write(record, pos + record.position());
+
+                    Location movedLocation = new Location(pos, location.length, location.expiryTime);
+                    movedLocation.token = location.token;
+                    moved.put(entry.getKey(), movedLocation);
+                    pos += location.length;
+                }
+                out.force(true);
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                out.close();
+                Files.deleteIfExists(tempPath);
+                throw ex;
+            }
+
+            FileChannel oldChannel = channel;
+            this.channel = out;
+            this.fileLock = outLock;
+            index.putAll(moved);
+            this.size = pos;
+            this.liveBytes = pos - HEADER_SIZE;
+            try {
+                oldChannel.close(); // also releases its lock
+            } catch (IOException ex) {
+                LOGGER.log(System.Logger.Level.WARNING, "Failed to close old token store file " + path, ex);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to compact token store " + path, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if(compactionScheduler != null)
+            compactionScheduler.shutdownNow();
+
+        lock.writeLock().lock();
+        try {
+            fileLock.release();
+            channel.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to close token store " + path, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller must hold the write lock
+    private long append(ByteBuffer record) {
+        record.putInt(4, crc(record.duplicate().position(8)));
+        record.flip();
+
+        long pos = size;
+        try {
+            while(record.hasRemaining())
+                channel.write(record, size + record.position());
+            if(syncWrites)
+                channel.force(false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to write to token store " + path, ex);
+        }
+        this.size += record.capacity();
+        return pos;
+    }
+
+    private Token readToken(String key, Location location) {
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        try {
+            channel.read(record, location.offset);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to read from token store " + path, ex);
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int payloadStart = 4 + 4 + 1 + 2 + keyBytes.length + 8;
+        byte[] payload = new byte[location.length - payloadStart];
+        record.get(payloadStart, payload);
+        return TokenCodec.decode(this.decrypt(payload, keyBytes));
+    }
+
+    private byte[] encrypt(byte[] data, byte[] keyBytes) {
+        if(encryptionKey == null)
+            return data;
+
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(keyBytes); // binds the value to its key
+            byte[] encrypted = cipher.doFinal(data);
+
+            byte[] result = new byte[IV_LENGTH + encrypted.length];
+            System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+            System.arraycopy(encrypted, 0, result, IV_LENGTH, encrypted.length);
+            return result;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to encrypt token", ex);
+        }
+    }
+
+    private byte[] decrypt(byte[] data, byte[] keyBytes) {
+        if(encryptionKey == null)
+            return data;
+
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, data, 0, IV_LENGTH));
+            cipher.updateAAD(keyBytes);
+            return cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to decrypt token, wrong encryption key?", ex);
+        }
+    }
+
+    private static byte[] keyBytes(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if(keyBytes.length > MAX_KEY_LENGTH)
+            throw new IllegalArgumentException("key cannot be longer than " + MAX_KEY_LENGTH + " bytes");
+        return keyBytes;
+    }
+
+    private static String readKey(ByteBuffer record) {
+        byte[] key = new byte[record.getShort() & 0xFFFF];
+        record.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    // CRC32 over the remaining bytes, without moving the buffer's position
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static class Location {
+
+        private final long offset;
+        private final int length;
+        private final long expiryTime;
+        private volatile Token token; // decoded on first get
+
+        private Location(long offset, int length, long expiryTime) {
+            this.offset = offset;
+            this.length = length;
+            this.expiryTime = expiryTime;
+        }
+
+    }
+
+    public static Builder createBuilder(Path path) {
+        return new Builder(path);
+    }
+
+    public static class Builder {
+
+        private final Path path;
+        private SecretKey encryptionKey;
+        private boolean syncWrites = true;
+        private double compactionRatio = 1.0;
+        private Duration compactionInterval;
+
+        private Builder(Path path) {
+            this.path = Objects.requireNonNull(path, "path cannot be null");
+        }
+
+        // AES key used to encrypt the token values, they're stored in plain text without one
+        public Builder setEncryptionKey(SecretKey encryptionKey) {
+            this.encryptionKey = Objects.requireNonNull(encryptionKey, "encryptionKey cannot be null");
+            return this;
+        }
+
+        // Whether every write is flushed to disk before returning
+        public Builder setSyncWrites(boolean syncWrites) {
+            this.syncWrites = syncWrites;
+            return this;
+        }
+
+        // Compaction runs once overwritten data takes up this many times the size of the live data, and at least 64 KiB
+        public Builder setCompactionRatio(double compactionRatio) {
+            if(compactionRatio <= 0)
+                throw new IllegalArgumentException("compactionRatio must be positive");
+            this.compactionRatio = compactionRatio;
+            return this;
+        }
+
+        public Builder setCompactionInterval(Duration compactionInterval) {
+            this.compactionInterval = Objects.requireNonNull(compactionInterval, "compactionInterval cannot be null");
+            return this;
+        }
+
+        public FileTokenStore build() throws IOException {
+            return new FileTokenStore(path, encryptionKey, syncWrites, compactionRatio, compactionInterval);
+        }
+
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.melluh.mcauth.store;
+
+import com.melluh.mcauth.tokens.Token;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Shared cache for nodes running in the same JVM, e.g. for tests or several logical nodes in one process
+public class InMemorySharedTokenCache implements SharedTokenCache {
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    @Override
+    public Entry get(String key) {
+        Slot slot = slots.get(key);
+        return slot != null && slot.token != null ? new Entry(slot.token, slot.version) : null;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, long expectedVersion, Token token) {
+        Objects.requireNonNull(token, "token cannot be null");
+        boolean[] updated = new boolean[1];
+        slots.compute(key, (k, slot) -> {
+            long version = slot != null && slot.token != null ? slot.version : 0;
+            if(version != expectedVersion)
+                return slot;
+            updated[0] = true;
+            return slot != null
+                    ? new Slot(token, slot.version + 1, slot.leaseOwner, slot.leaseExpiry)
+                    : new Slot(token, 1, null, 0);
+        });
+        return updated[0];
+    }
+
+    // Keeps counting versions from where the removed entry was, so a stale version can't match a later write
+    @Override
+    public void remove(String key) {
+        slots.computeIfPresent(key, (k, slot) -> new Slot(null, slot.version + 1, slot.leaseOwner, slot.leaseExpiry));
+    }
+
+    @Override
+    public boolean tryAcquireLease(String key, String owner, Duration duration) {
+        Objects.requireNonNull(owner, "owner cannot be null");
+        long now = System.currentTimeMillis();
+        boolean[] acquired = new boolean[1];
+        slots.compute(key, (k, slot) -> {
+            if(slot != null && slot.leaseOwner != null && !slot.leaseOwner.equals(owner) && slot.leaseExpiry > now)
+                return slot;
+            acquired[0] = true;
+            return slot != null
+                    ? new Slot(slot.token, slot.version, owner, now + duration.toMillis())
+                    : new Slot(null, 0, owner, now + duration.toMillis());
+        });
+        return acquired[0];
+    }
+
+    @Override
+    public void releaseLease(String key, String owner) {
+        slots.computeIfPresent(key, (k, slot) -> owner.equals(slot.leaseOwner)
+                ? new Slot(slot.token, slot.version, null, 0)
+                : slot);
+    }
+
+    @Override
+    public void close() {
+        slots.clear();
+    }
+
+    private record Slot(Token token, long version, String leaseOwner, long leaseExpiry) {}
+
+}
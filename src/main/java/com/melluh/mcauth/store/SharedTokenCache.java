@@ -0,0 +1,33 @@
+package com.melluh.mcauth.store;
+
+import com.melluh.mcauth.tokens.Token;
+
+import java.time.Duration;
+
+/*
+ * Token cache shared by several nodes. Every write gives the entry a new version, and a node only replaces
+ * a token if the version it read is still current. Leases decide which node refreshes a key, they expire on
+ * their own so a node that dies while holding one only delays the refresh.
+ */
+public interface SharedTokenCache extends AutoCloseable {
+
+    // Returns null if there's no token stored under the key
+    Entry get(String key);
+
+    // Stores the token if the entry still has the expected version (0 if absent), false if another node wrote first
+    boolean compareAndSet(String key, long expectedVersion, Token token);
+
+    void remove(String key);
+
+    // Takes or extends the lease on the key, false while another owner holds an unexpired lease
+    boolean tryAcquireLease(String key, String owner, Duration duration);
+
+    // Does nothing if the lease is held by another owner
+    void releaseLease(String key, String owner);
+
+    @Override
+    void close();
+
+    record Entry(Token token, long version) {}
+
+}
@@ -0,0 +1,89 @@
+package com.melluh.mcauth.store;
+
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.tokens.MojangToken;
+import com.melluh.mcauth.tokens.Token;
+import com.melluh.mcauth.tokens.XboxToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Binary form of every Token subtype: type, expiry time, value and the subtype's extra field
+public class TokenCodec {
+
+    public static final byte MICROSOFT = 1;
+    public static final byte XBOX = 2;
+    public static final byte MOJANG = 3;
+
+    private TokenCodec() {}
+
+    public static byte typeOf(Token token) {
+        if(token instanceof MicrosoftToken)
+            return MICROSOFT;
+        if(token instanceof XboxToken)
+            return XBOX;
+        if(token instanceof MojangToken)
+            return MOJANG;
+        throw new IllegalArgumentException("Unsupported token type: " + token.getClass().getName());
+    }
+
+    public static byte[] encode(Token token) {
+        byte type = typeOf(token);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(token.getValue().length() + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeLong(token.getExpiryTime());
+            writeString(out, token.getValue());
+            if(token instanceof MicrosoftToken microsoftToken) {
+                writeString(out, microsoftToken.refreshToken());
+            } else if(token instanceof XboxToken xboxToken) {
+                writeString(out, xboxToken.getUserHash());
+            }
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public static Token decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte type = in.readByte();
+            long expiryTime = in.readLong();
+            String value = readString(in);
+            return switch (type) {
+                case MICROSOFT -> new MicrosoftToken(value, expiryTime, readString(in));
+                case XBOX -> new XboxToken(value, expiryTime, readString(in));
+                case MOJANG -> new MojangToken(value, expiryTime);
+                default -> throw new IllegalArgumentException("Unknown token type: " + type);
+            };
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // writeUTF is limited to 64 KB, so strings get an int length instead
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0)
+            return null;
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+}
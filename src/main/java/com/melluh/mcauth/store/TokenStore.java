@@ -0,0 +1,22 @@
+package com.melluh.mcauth.store;
+
+import com.melluh.mcauth.tokens.Token;
+
+import java.util.Set;
+
+// Persistent storage for tokens, keyed by an id chosen by the caller (e.g. account id + token kind)
+public interface TokenStore extends AutoCloseable {
+
+    void put(String key, Token token);
+
+    // Returns null if there's no token stored under the key
+    Token get(String key);
+
+    void remove(String key);
+
+    Set<String> keys();
+
+    @Override
+    void close();
+
+}
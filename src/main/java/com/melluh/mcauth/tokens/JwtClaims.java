@@ -0,0 +1,56 @@
+package com.melluh.mcauth.tokens;
+
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+// Decoded payload of a JWT. This does not verify the signature.
+public class JwtClaims {
+
+    private final JsonObject json;
+
+    private JwtClaims(JsonObject json) {
+        this.json = json;
+    }
+
+    // Returns empty if the value isn't a signed JWT (header.payload.signature), e.g. for encrypted Xbox Live tokens
+    static Optional<JwtClaims> decode(String token) {
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if(second < 0 || token.indexOf('.', second + 1) >= 0)
+            return Optional.empty();
+
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(token.substring(first + 1, second));
+            return Optional.of(new JwtClaims(JsonParser.object().from(new String(payload, StandardCharsets.UTF_8))));
+        } catch (IllegalArgumentException | JsonParserException ex) {
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Failed to decode JWT payload", ex);
+        }
+    }
+
+    public boolean has(String name) {
+        return json.has(name);
+    }
+
+    // Returns null if the claim is absent
+    public String getString(String name) {
+        return json.getString(name, null);
+    }
+
+    public long getLong(String name, long defaultValue) {
+        return json.getLong(name, defaultValue);
+    }
+
+    // For claims nested one level deep, such as profiles.mc in Mojang tokens
+    public String getString(String object, String name) {
+        JsonObject nested = json.getObject(object, null);
+        return nested != null ? nested.getString(name, null) : null;
+    }
+
+}
@@ -1,37 +1,58 @@
 package com.melluh.mcauth.tokens;
 
-import com.grack.nanojson.JsonObject;
-import com.grack.nanojson.JsonParser;
-import com.grack.nanojson.JsonParserException;
+import com.melluh.mcauth.AuthErrorCode;
 import com.melluh.mcauth.AuthenticationException;
+import com.melluh.mcauth.utils.AuthUtils;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class MojangToken extends Token {
 
+    private volatile MojangClaims mojangClaims; // extracted on first use
+
     public MojangToken(String value, long expiryTime) {
         super(value, expiryTime);
     }
 
     // xuid = Xbox User ID
     public String getXboxUserId() {
-        try {
-            JsonObject json = this.jwtPayload();
-            return json.getString("xuid");
-        } catch (JsonParserException ex) {
-            throw new AuthenticationException("Failed to get XUID from Mojang JWT - invalid JSON", ex);
-        }
+        return this.mojangClaims().xuid();
+    }
+
+    // Time the token was issued at, in epoch milliseconds
+    public long getIssuedAt() {
+        return this.mojangClaims().issuedAt();
     }
 
-    // This does not verify the signature
-    private JsonObject jwtPayload() throws JsonParserException {
-        String[] jwtParts = this.getValue().split("\\.");
-        if(jwtParts.length != 3)
-            throw new IllegalStateException("Failed to get XUID from Mojang JWT, invalid token format");
+    // Expiry time stated in the JWT itself, in epoch milliseconds
+    public long getClaimedExpiryTime() {
+        return this.mojangClaims().expiryTime();
+    }
 
-        String payloadStr = new String(Base64.getUrlDecoder().decode(jwtParts[1]), StandardCharsets.UTF_8);
-        return JsonParser.object().from(payloadStr);
+    // UUID of the Minecraft profile, or null if the account doesn't own the game
+    public UUID getProfileId() {
+        return this.mojangClaims().profileId();
     }
 
+    private MojangClaims mojangClaims() {
+        MojangClaims claims = this.mojangClaims;
+        if(claims == null) {
+            JwtClaims jwt = this.getClaims().orElseThrow(() -> new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Failed to read Mojang JWT, invalid token format"));
+            String profileId = jwt.getString("profiles", "mc");
+            claims = new MojangClaims(jwt.getString("xuid"),
+                    TimeUnit.SECONDS.toMillis(jwt.getLong("iat", 0)),
+                    TimeUnit.SECONDS.toMillis(jwt.getLong("exp", 0)),
+                    profileId != null ? parseProfileId(profileId) : null);
+            this.mojangClaims = claims;
+        }
+        return claims;
+    }
+
+    private static UUID parseProfileId(String profileId) {
+        return profileId.length() == 32 ? AuthUtils.parseMojangUuid(profileId) : UUID.fromString(profileId);
+    }
+
+    private record MojangClaims(String xuid, long issuedAt, long expiryTime, UUID profileId) {}
+
 }
@@ -0,0 +1,101 @@
+package com.melluh.mcauth.tokens;
+
+import com.grack.nanojson.JsonObject;
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Chat signing key pair of a player, with Mojang's signatures of the public key
+public class PlayerCertificates {
+
+    private final PrivateKey privateKey;
+    private final PublicKey publicKey;
+    private final byte[] publicKeySignature, publicKeySignatureV2;
+    private final long expiryTime, refreshTime;
+
+    public PlayerCertificates(PrivateKey privateKey, PublicKey publicKey, byte[] publicKeySignature, byte[] publicKeySignatureV2, long expiryTime, long refreshTime) {
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+        this.publicKeySignature = publicKeySignature;
+        this.publicKeySignatureV2 = publicKeySignatureV2;
+        this.expiryTime = expiryTime;
+        this.refreshTime = refreshTime;
+    }
+
+    // The PEM headers say "RSA PRIVATE KEY", but the keys are PKCS#8 and X.509 encoded
+    public static PlayerCertificates fromJson(JsonObject json) {
+        JsonObject keyPair = json.getObject("keyPair", null);
+        if(keyPair == null || !keyPair.isString("privateKey") || !keyPair.isString("publicKey") || !json.isString("publicKeySignature")
+                || !json.isString("expiresAt") || !json.isString("refreshedAfter"))
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Player certificates response is missing fields");
+
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(decodePem(keyPair.getString("privateKey"))));
+            PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(decodePem(keyPair.getString("publicKey"))));
+
+            String signatureV2 = json.getString("publicKeySignatureV2", null);
+            return new PlayerCertificates(privateKey, publicKey,
+                    Base64.getDecoder().decode(json.getString("publicKeySignature")),
+                    signatureV2 != null ? Base64.getDecoder().decode(signatureV2) : null,
+                    Instant.parse(json.getString("expiresAt")).toEpochMilli(),
+                    Instant.parse(json.getString("refreshedAfter")).toEpochMilli());
+        } catch (GeneralSecurityException | IllegalArgumentException | DateTimeParseException ex) {
+            // bad key, base64 or timestamp
+            throw new AuthenticationException(AuthErrorCode.INVALID_RESPONSE, "Failed to parse player certificates", ex);
+        }
+    }
+
+    private static byte[] decodePem(String pem) {
+        StringBuilder base64 = new StringBuilder(pem.length());
+        for(String line : pem.split("\\R")) {
+            if(!line.startsWith("-----"))
+                base64.append(line.trim());
+        }
+        return Base64.getDecoder().decode(base64.toString());
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public byte[] getPublicKeySignature() {
+        return publicKeySignature.clone();
+    }
+
+    // Null if the response did not include it
+    public byte[] getPublicKeySignatureV2() {
+        return publicKeySignatureV2 != null ? publicKeySignatureV2.clone() : null;
+    }
+
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    // Time after which new certificates should be requested, well before the current ones expire
+    public long getRefreshTime() {
+        return refreshTime;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() > expiryTime;
+    }
+
+    public boolean needsRefresh() {
+        return System.currentTimeMillis() > refreshTime;
+    }
+
+}
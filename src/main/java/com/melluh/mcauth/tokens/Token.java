@@ -1,9 +1,12 @@
 package com.melluh.mcauth.tokens;
 
+import java.util.Optional;
+
 public abstract class Token {
 
     private final String value;
     private final long expiryTime;
+    private volatile Optional<JwtClaims> claims; // decoded on first use
 
     public Token(String value, long expiryTime) {
         this.value = value;
@@ -22,4 +25,18 @@ public abstract class Token {
         return System.currentTimeMillis() > expiryTime;
     }
 
+    public boolean expiresWithin(long millis) {
+        return System.currentTimeMillis() + millis > expiryTime;
+    }
+
+    // Claims of the token if it is a signed JWT, decoded once and then reused
+    public Optional<JwtClaims> getClaims() {
+        Optional<JwtClaims> claims = this.claims;
+        if(claims == null) {
+            claims = JwtClaims.decode(value);
+            this.claims = claims;
+        }
+        return claims;
+    }
+
 }
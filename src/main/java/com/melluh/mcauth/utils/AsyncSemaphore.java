@@ -0,0 +1,55 @@
+package com.melluh.mcauth.utils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Semaphore whose waiters get a future instead of blocking a thread
+public class AsyncSemaphore {
+
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int permits;
+
+    public AsyncSemaphore(int permits) {
+        if(permits < 1)
+            throw new IllegalArgumentException("permits must be at least 1");
+        this.permits = permits;
+    }
+
+    public synchronized CompletableFuture<Void> acquire() {
+        if(permits > 0) {
+            permits--;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    public void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            next = waiters.poll();
+            if(next == null)
+                permits++;
+        }
+
+        // Complete outside the lock, this runs the waiter's follow-up work
+        if(next != null)
+            next.complete(null);
+    }
+
+    // Runs the call once a permit is available and releases it when the call completes
+    public <T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> call) {
+        return this.acquire()
+                .thenCompose(ignored -> call.get())
+                .whenComplete((result, ex) -> this.release());
+    }
+
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+}
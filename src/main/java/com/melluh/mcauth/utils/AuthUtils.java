@@ -1,10 +1,6 @@
 package com.melluh.mcauth.utils;
 
 import javax.crypto.SecretKey;
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.util.UUID;
 
@@ -24,16 +20,9 @@ public class AuthUtils {
         return uuid.toString().replace("-", "");
     }
 
+    // Servers hashing many logins with the same key pair should use ServerHasher instead
     public static String calculateServerHash(String serverId, PublicKey publicKey, SecretKey secretKey) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            digest.update(serverId.getBytes(StandardCharsets.ISO_8859_1));
-            digest.update(secretKey.getEncoded());
-            digest.update(publicKey.getEncoded());
-            return new BigInteger(digest.digest()).toString(16);
-        } catch (NoSuchAlgorithmException ex) {
-            throw new RuntimeException("SHA-1 hashing algorithm not available", ex);
-        }
+        return ServerHasher.hash(serverId, secretKey.getEncoded(), publicKey.getEncoded());
     }
 
 }
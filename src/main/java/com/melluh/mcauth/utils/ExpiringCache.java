@@ -0,0 +1,85 @@
+package com.melluh.mcauth.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongBiFunction;
+
+// Small LRU cache with a per-entry time to live, bounded by number of entries or by the total weight of its entries
+public class ExpiringCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long maxWeight;
+    private final long defaultTtl;
+    private final ToLongBiFunction<K, V> weigher;
+    private long totalWeight;
+
+    public ExpiringCache(int maxSize, long defaultTtlMillis) {
+        this(maxSize, defaultTtlMillis, (key, value) -> 1);
+    }
+
+    // The weigher is called once per put, e.g. with an estimate of the entry's size in bytes
+    public ExpiringCache(long maxWeight, long defaultTtlMillis, ToLongBiFunction<K, V> weigher) {
+        if(maxWeight < 1)
+            throw new IllegalArgumentException("maxWeight must be at least 1");
+        this.maxWeight = maxWeight;
+        this.defaultTtl = defaultTtlMillis;
+        this.weigher = weigher;
+    }
+
+    // Returns the value, or null if absent or expired
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if(entry == null)
+            return null;
+        if(entry.expiryTime < System.currentTimeMillis()) {
+            this.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        this.put(key, value, defaultTtl);
+    }
+
+    public synchronized void put(K key, V value, long ttlMillis) {
+        long weight = weigher.applyAsLong(key, value);
+        Entry<V> previous = entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis, weight));
+        totalWeight += weight - (previous != null ? previous.weight : 0);
+        if(totalWeight > maxWeight) {
+            Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+            while(totalWeight > maxWeight && it.hasNext()) {
+                totalWeight -= it.next().getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        this.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        this.totalWeight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return totalWeight;
+    }
+
+    private void remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        if(entry != null)
+            totalWeight -= entry.weight;
+    }
+
+    private record Entry<V>(V value, long expiryTime, long weight) {}
+
+}
@@ -4,13 +4,12 @@ import java.net.URLEncoder;
 import java.net.http.HttpRequest.BodyPublisher;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class FormBody {
 
-    private final Map<String, String> values = new HashMap<>();
+    private final Map<String, String> values = new LinkedHashMap<>();
 
     public FormBody add(String key, String value) {
         values.put(key, value);
@@ -18,13 +17,30 @@ public class FormBody {
     }
 
     public String asRequestString() {
-        return values.entrySet().stream()
-                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
-                .collect(Collectors.joining("&"));
+        StringBuilder builder = new StringBuilder();
+        for(Map.Entry<String, String> entry : values.entrySet()) {
+            if(builder.length() > 0)
+                builder.append('&');
+            builder.append(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
+        }
+        return builder.toString();
     }
 
     public BodyPublisher asPublisher() {
         return BodyPublishers.ofString(this.asRequestString());
     }
 
+    // The values added so far are encoded once, the given keys are filled in per request
+    public RequestTemplate asTemplate(String... variableKeys) {
+        StringBuilder builder = new StringBuilder(this.asRequestString());
+        for(String key : variableKeys) {
+            if(builder.length() > 0)
+                builder.append('&');
+            builder.append(URLEncoder.encode(key, StandardCharsets.UTF_8)).append('=').append(RequestTemplate.PLACEHOLDER);
+        }
+        return RequestTemplate.form(builder.toString());
+    }
+
 }
@@ -0,0 +1,92 @@
+package com.melluh.mcauth.utils;
+
+import java.net.URLEncoder;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+
+// Request body that is encoded once, with placeholders where the per-request values are spliced in
+public class RequestTemplate {
+
+    public static final String PLACEHOLDER = "${}";
+
+    private final byte[][] parts;
+    private final UnaryOperator<String> encoder;
+
+    private RequestTemplate(String template, UnaryOperator<String> encoder) {
+        this.encoder = encoder;
+
+        int count = 0;
+        for(int i = template.indexOf(PLACEHOLDER); i >= 0; i = template.indexOf(PLACEHOLDER, i + PLACEHOLDER.length()))
+            count++;
+
+        this.parts = new byte[count + 1][];
+        int start = 0;
+        for(int i = 0; i < count; i++) {
+            int end = template.indexOf(PLACEHOLDER, start);
+            parts[i] = template.substring(start, end).getBytes(StandardCharsets.UTF_8);
+            start = end + PLACEHOLDER.length();
+        }
+        parts[count] = template.substring(start).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Values are URL encoded, see FormBody.asTemplate
+    public static RequestTemplate form(String template) {
+        return new RequestTemplate(template, value -> URLEncoder.encode(value, StandardCharsets.UTF_8));
+    }
+
+    // Placeholders must be inside JSON strings, values are escaped for that
+    public static RequestTemplate json(String template) {
+        return new RequestTemplate(template, RequestTemplate::escapeJson);
+    }
+
+    public byte[] fill(String... values) {
+        if(values.length != parts.length - 1)
+            throw new IllegalArgumentException("Expected " + (parts.length - 1) + " values, got " + values.length);
+
+        byte[][] encoded = new byte[values.length][];
+        int length = parts[values.length].length;
+        for(int i = 0; i < values.length; i++) {
+            encoded[i] = encoder.apply(values[i]).getBytes(StandardCharsets.UTF_8);
+            length += parts[i].length + encoded[i].length;
+        }
+
+        byte[] body = new byte[length];
+        int pos = 0;
+        for(int i = 0; i < values.length; i++) {
+            System.arraycopy(parts[i], 0, body, pos, parts[i].length);
+            pos += parts[i].length;
+            System.arraycopy(encoded[i], 0, body, pos, encoded[i].length);
+            pos += encoded[i].length;
+        }
+        System.arraycopy(parts[values.length], 0, body, pos, parts[values.length].length);
+        return body;
+    }
+
+    public BodyPublisher asPublisher(String... values) {
+        return BodyPublishers.ofByteArray(this.fill(values));
+    }
+
+    private static String escapeJson(String value) {
+        StringBuilder builder = null;
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c != '"' && c != '\\' && c >= 0x20) {
+                if(builder != null)
+                    builder.append(c);
+                continue;
+            }
+
+            if(builder == null)
+                builder = new StringBuilder(value.length() + 16).append(value, 0, i);
+            if(c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else {
+                builder.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        return builder != null ? builder.toString() : value;
+    }
+
+}
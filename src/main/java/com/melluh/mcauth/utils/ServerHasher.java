@@ -0,0 +1,83 @@
+package com.melluh.mcauth.utils;
+
+import javax.crypto.SecretKey;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+
+// Reusable version of AuthUtils.calculateServerHash for a server whose key pair doesn't change
+public class ServerHasher {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("SHA-1 hashing algorithm not available", ex);
+        }
+    });
+
+    private final byte[] encodedPublicKey;
+
+    public ServerHasher(PublicKey publicKey) {
+        this.encodedPublicKey = publicKey.getEncoded();
+    }
+
+    public String hash(String serverId, SecretKey secretKey) {
+        return hash(serverId, secretKey.getEncoded(), encodedPublicKey);
+    }
+
+    public String hash(String serverId, byte[] sharedSecret) {
+        return hash(serverId, sharedSecret, encodedPublicKey);
+    }
+
+    static String hash(String serverId, byte[] sharedSecret, byte[] encodedPublicKey) {
+        MessageDigest digest = SHA1.get();
+        // Same as encoding with ISO-8859-1, which writes one '?' per unmappable code point, so a surrogate pair is one byte
+        for(int i = 0; i < serverId.length(); ) {
+            int codePoint = serverId.codePointAt(i);
+            digest.update(codePoint <= 0xFF ? (byte) codePoint : (byte) '?');
+            i += Character.charCount(codePoint);
+        }
+        digest.update(sharedSecret);
+        digest.update(encodedPublicKey);
+        return toSignedHex(digest.digest()); // digest() also resets it for the next use
+    }
+
+    // Same output as new BigInteger(bytes).toString(16): two's complement, minus sign and no leading zeros
+    static String toSignedHex(byte[] bytes) {
+        boolean negative = bytes[0] < 0;
+        if(negative) {
+            // Negate in place: invert every byte, then add one
+            boolean carry = true;
+            for(int i = bytes.length - 1; i >= 0; i--) {
+                int value = (~bytes[i] & 0xFF) + (carry ? 1 : 0);
+                carry = value > 0xFF;
+                bytes[i] = (byte) value;
+            }
+        }
+
+        char[] chars = new char[bytes.length * 2 + 1];
+        int pos = 0;
+        if(negative)
+            chars[pos++] = '-';
+
+        boolean leading = true;
+        for(byte b : bytes) {
+            int high = (b >> 4) & 0xF, low = b & 0xF;
+            if(!leading || high != 0) {
+                chars[pos++] = HEX_DIGITS[high];
+                leading = false;
+            }
+            if(!leading || low != 0) {
+                chars[pos++] = HEX_DIGITS[low];
+                leading = false;
+            }
+        }
+
+        if(leading)
+            return "0";
+        return new String(chars, 0, pos);
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.melluh.mcauth.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+// Shares one in-flight call between all concurrent callers with the same key
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if(existing != null)
+            return existing.copy();
+
+        try {
+            call.get().whenComplete((result, ex) -> {
+                // Remove before completing, so callers arriving after completion start a new call
+                inFlight.remove(key, future);
+                if(ex != null) {
+                    future.completeExceptionally(ex);
+                } else {
+                    future.complete(result);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(ex);
+        }
+
+        // Copy so one caller cancelling its future doesn't affect the others
+        return future.copy();
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+
+}
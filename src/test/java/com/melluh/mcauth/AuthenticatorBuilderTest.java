@@ -0,0 +1,46 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.HttpTransport;
+import com.melluh.mcauth.http.RequestSender;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AuthenticatorBuilderTest {
+
+    @Test
+    void plainBuildersShareTheDefaultTransport() {
+        RequestSender sender = XboxAuthenticator.createBuilder().buildSender();
+        assertSame(HttpTransport.shared().getHttpClient(), sender.getHttpClient());
+        assertSame(HttpTransport.shared().getCircuitBreaker(), sender.getCircuitBreaker());
+    }
+
+    @Test
+    void executorAndTimeoutConfigureAClientOfTheirOwn() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RequestSender sender = XboxAuthenticator.createBuilder().setExecutor(executor).buildSender();
+        assertNotSame(HttpTransport.shared().getHttpClient(), sender.getHttpClient());
+        assertSame(executor, sender.getHttpClient().executor().orElseThrow());
+        assertNotSame(HttpTransport.shared().getCircuitBreaker(), sender.getCircuitBreaker());
+        executor.shutdown();
+
+        RequestSender timedSender = XboxAuthenticator.createBuilder().setRequestTimeout(Duration.ofSeconds(3)).buildSender();
+        assertEquals(Duration.ofSeconds(3), timedSender.getHttpClient().connectTimeout().orElseThrow());
+    }
+
+    @Test
+    void hostKeysIncludeExplicitPorts() {
+        assertEquals("api.minecraftservices.com", RequestSender.hostKey(URI.create("https://api.minecraftservices.com/minecraft/profile")));
+        assertEquals("127.0.0.1:8080", RequestSender.hostKey(URI.create("http://127.0.0.1:8080/")));
+        assertNotEquals(RequestSender.hostKey(URI.create("http://127.0.0.1:8080/")), RequestSender.hostKey(URI.create("http://127.0.0.1:8081/")));
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.mock.MockAuthServer;
+import com.melluh.mcauth.mock.MockPipeline;
+import com.melluh.mcauth.store.InMemorySharedTokenCache;
+import com.melluh.mcauth.store.SharedTokenCache;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.tokens.MojangToken;
+import com.melluh.mcauth.tokens.Token;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CoordinatedLoginTest {
+
+    @Test
+    void leaseOutlivesSlowRefresh() throws Exception {
+        // Every stage takes 150 ms, so a full login runs well past the 300 ms lease
+        try (MockAuthServer server = MockAuthServer.createBuilder().setLatency(Duration.ofMillis(150), Duration.ZERO).build();
+             SharedTokenCache cache = new InMemorySharedTokenCache();
+             CoordinatedLogin first = this.node(server.getUri(), cache, "first");
+             CoordinatedLogin second = this.node(server.getUri(), cache, "second")) {
+            AuthSession session = AuthSession.of(new MicrosoftToken("expired", 0, "refresh"));
+            CompletableFuture<AuthSession> firstLogin = first.login("account", session, Duration.ZERO);
+            Thread.sleep(50);
+            CompletableFuture<AuthSession> secondLogin = second.login("account", session, Duration.ZERO);
+
+            assertEquals(firstLogin.join().mojangToken().getValue(), secondLogin.join().mojangToken().getValue());
+            assertEquals(1, server.getRequestCount(Endpoint.TOKEN), "refresh token was redeemed by both nodes");
+        }
+    }
+
+    @Test
+    void lostWriteAdoptsTheNewerToken() throws Exception {
+        MojangToken otherToken = new MojangToken("other-node", System.currentTimeMillis() + Duration.ofDays(1).toMillis());
+        try (MockAuthServer server = MockAuthServer.createBuilder().build();
+             SharedTokenCache cache = new InterferingCache(CoordinatedLogin.key("account", LoginStage.MOJANG), otherToken);
+             CoordinatedLogin node = this.node(server.getUri(), cache, "node")) {
+            AuthSession result = node.login("account", AuthSession.of(new MicrosoftToken("expired", 0, "refresh")), Duration.ZERO).join();
+
+            assertEquals("other-node", result.mojangToken().getValue());
+            assertEquals("other-node", cache.get(CoordinatedLogin.key("account", LoginStage.MOJANG)).token().getValue());
+        }
+    }
+
+    @Test
+    void lostWriteOfOlderTokenIsOverwritten() throws Exception {
+        MojangToken otherToken = new MojangToken("other-node", System.currentTimeMillis() + 1000);
+        try (MockAuthServer server = MockAuthServer.createBuilder().build();
+             SharedTokenCache cache = new InterferingCache(CoordinatedLogin.key("account", LoginStage.MOJANG), otherToken);
+             CoordinatedLogin node = this.node(server.getUri(), cache, "node")) {
+            AuthSession result = node.login("account", AuthSession.of(new MicrosoftToken("expired", 0, "refresh")), Duration.ZERO).join();
+
+            assertNotEquals("other-node", result.mojangToken().getValue());
+            assertEquals(result.mojangToken().getValue(), cache.get(CoordinatedLogin.key("account", LoginStage.MOJANG)).token().getValue());
+        }
+    }
+
+    private CoordinatedLogin node(URI baseUri, SharedTokenCache cache, String nodeId) {
+        return CoordinatedLogin.createBuilder(new MockPipeline(baseUri), cache)
+                .setNodeId(nodeId)
+                .setLeaseDuration(Duration.ofMillis(300))
+                .setPollInterval(Duration.ofMillis(20))
+                .build();
+    }
+
+    // Lets another node write the key right before this node's first write to it
+    private static class InterferingCache extends InMemorySharedTokenCache {
+
+        private final String key;
+        private final Token otherToken;
+        private boolean interfered;
+
+        private InterferingCache(String key, Token otherToken) {
+            this.key = key;
+            this.otherToken = otherToken;
+        }
+
+        @Override
+        public synchronized boolean compareAndSet(String key, long expectedVersion, Token token) {
+            if(key.equals(this.key) && !interfered) {
+                this.interfered = true;
+                super.compareAndSet(key, expectedVersion, otherToken);
+            }
+            return super.compareAndSet(key, expectedVersion, token);
+        }
+
+    }
+
+}
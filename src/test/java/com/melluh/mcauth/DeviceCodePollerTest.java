@@ -0,0 +1,49 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.MicrosoftAuthenticator.DeviceCode;
+import com.melluh.mcauth.MicrosoftAuthenticator.PollingResult;
+import com.melluh.mcauth.MicrosoftAuthenticator.PollingState;
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.mock.MockAuthServer;
+import com.melluh.mcauth.mock.MockPipeline;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class DeviceCodePollerTest {
+
+    private static final int LOGINS = 20;
+
+    @Test
+    void pollsEveryCodeUntilItIsAccepted() throws Exception {
+        try (MockAuthServer server = MockAuthServer.createBuilder().setPendingPolls(2).build();
+             DeviceCodePoller poller = new DeviceCodePoller(new MockPipeline(server.getUri()).getMicrosoftAuthenticator())) {
+            List<CompletableFuture<PollingResult>> results = new ArrayList<>();
+            for(int i = 0; i < LOGINS; i++)
+                results.add(poller.poll(new DeviceCode("USER" + i, "device-" + i, "https://www.microsoft.com/link", System.currentTimeMillis() + 60000, 0)));
+
+            for(CompletableFuture<PollingResult> result : results) {
+                assertEquals(PollingState.ACCEPTED, result.join().state());
+                assertNotNull(result.join().token());
+            }
+            assertEquals(LOGINS * 3, server.getRequestCount(Endpoint.TOKEN));
+            assertEquals(0, poller.getPendingCount());
+        }
+    }
+
+    @Test
+    void expiredCodeCompletesWithoutRequest() throws Exception {
+        try (MockAuthServer server = MockAuthServer.createBuilder().build();
+             DeviceCodePoller poller = new DeviceCodePoller(new MockPipeline(server.getUri()).getMicrosoftAuthenticator())) {
+            PollingResult result = poller.poll(new DeviceCode("USER", "device", "https://www.microsoft.com/link", System.currentTimeMillis() - 1, 0)).join();
+            assertEquals(PollingState.EXPIRED, result.state());
+            assertEquals(0, server.getRequestCount(Endpoint.TOKEN));
+        }
+    }
+
+}
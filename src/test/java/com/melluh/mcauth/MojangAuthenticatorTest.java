@@ -0,0 +1,64 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.HttpTransport;
+import com.melluh.mcauth.mock.MockAuthServer;
+import com.melluh.mcauth.mock.MockPipeline;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.tokens.MojangToken;
+import com.melluh.mcauth.tokens.PlayerCertificates;
+import com.melluh.mcauth.tokens.XboxToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MojangAuthenticatorTest {
+
+    @Test
+    void accountWithoutGameFailsWithGameNotOwned() throws Exception {
+        try (MockAuthServer server = MockAuthServer.createBuilder().setOwnsGame(false).build()) {
+            AuthResult<AuthSession> result = AuthResult.of(new MockPipeline(server.getUri()).login(AuthSession.of(new MicrosoftToken("expired", 0, "refresh")))).join();
+
+            AuthResult.Failure<?> failure = assertInstanceOf(AuthResult.Failure.class, result);
+            assertEquals(AuthErrorCode.GAME_NOT_OWNED, failure.errorCode());
+            assertEquals(0, assertInstanceOf(RemoteAuthenticationException.class, failure.cause()).getStackTrace().length);
+        }
+    }
+
+    @Test
+    void emptyNotFoundProfileFailsWithGameNotOwned() throws Exception {
+        try (MockAuthServer server = MockAuthServer.createBuilder().setFailure(Endpoint.PROFILE, 404).build()) {
+            AuthResult<AuthSession> result = AuthResult.of(new MockPipeline(server.getUri()).login(AuthSession.of(new MicrosoftToken("expired", 0, "refresh")))).join();
+
+            AuthResult.Failure<?> failure = assertInstanceOf(AuthResult.Failure.class, result);
+            assertEquals(AuthErrorCode.GAME_NOT_OWNED, failure.errorCode());
+        }
+    }
+
+    @Test
+    void failedLoginWithXboxIsNotTurnedIntoAToken() throws Exception {
+        try (MockAuthServer server = MockAuthServer.createBuilder().setFailure(Endpoint.LOGIN_WITH_XBOX, 400).build()) {
+            MojangAuthenticator authenticator = MojangAuthenticator.createBuilder().setTransport(HttpTransport.createBuilder().build()).setBaseUri(server.getUri()).build();
+            CompletionException ex = assertThrows(CompletionException.class,
+                    () -> authenticator.getAccessToken(new XboxToken("xsts", System.currentTimeMillis() + 60000, "hash")).join());
+            assertEquals(AuthErrorCode.HTTP_ERROR, assertInstanceOf(AuthenticationException.class, ex.getCause()).errorCode());
+        }
+    }
+
+    @Test
+    void certificatesForMalformedTokenFailTheFuture() {
+        MojangAuthenticator authenticator = MojangAuthenticator.createDefault();
+        CompletableFuture<PlayerCertificates> future = authenticator.getCertificates(new MojangToken("not-a-jwt", System.currentTimeMillis() + 60000));
+
+        assertTrue(future.isCompletedExceptionally());
+        CompletionException ex = assertThrows(CompletionException.class, future::join);
+        assertEquals(AuthErrorCode.INVALID_RESPONSE, assertInstanceOf(AuthenticationException.class, ex.getCause()).errorCode());
+    }
+
+}
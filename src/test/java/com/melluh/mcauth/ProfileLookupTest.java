@@ -0,0 +1,46 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.HttpTransport;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfileLookupTest {
+
+    private static final UUID PROFILE_ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    @Test
+    void emptyNotFoundResponseIsCachedAsMissing() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                requests.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+            }
+        });
+        server.start();
+        try {
+            URI baseUri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+            ProfileLookup lookup = ProfileLookup.createBuilder().setTransport(HttpTransport.createBuilder().build()).setBaseUri(baseUri).build();
+
+            assertTrue(lookup.lookupUuid(PROFILE_ID).join().isEmpty());
+            assertTrue(lookup.lookupUuid(PROFILE_ID).join().isEmpty());
+            assertTrue(lookup.getTextures(PROFILE_ID).join().isEmpty());
+            assertTrue(lookup.getTextures(PROFILE_ID).join().isEmpty());
+            assertEquals(2, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+}
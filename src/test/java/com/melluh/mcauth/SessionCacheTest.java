@@ -0,0 +1,117 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.mock.MockAuthServer;
+import com.melluh.mcauth.mock.MockPipeline;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionCacheTest {
+
+    private static final int ACCOUNTS = 10;
+    private static final int ROUNDS = 3;
+
+    @Test
+    void everyScheduledRefreshRenewsTheSession() throws Exception {
+        ManualScheduler scheduler = new ManualScheduler();
+        try (MockAuthServer server = MockAuthServer.createBuilder().setTokenLifetime(Duration.ofSeconds(3)).build()) {
+            CountingPipeline pipeline = new CountingPipeline(server.getUri());
+            try (SessionCache cache = SessionCache.createBuilder(pipeline)
+                    .setScheduler(scheduler)
+                    .setRefreshMargin(Duration.ofMillis(500))
+                    .setRefreshJitter(Duration.ofSeconds(1))
+                    .build()) {
+                CompletableFuture<?>[] logins = new CompletableFuture<?>[ACCOUNTS];
+                for(int i = 0; i < ACCOUNTS; i++)
+                    logins[i] = cache.add("account-" + i, AuthSession.of(new MicrosoftToken("expired", 0, "refresh-" + i)));
+                CompletableFuture.allOf(logins).join();
+
+                // Refreshes run as soon as they are scheduled, while the current token still has some time left
+                for(int round = 0; round < ROUNDS; round++)
+                    scheduler.runPending(ACCOUNTS);
+                scheduler.awaitPending(ACCOUNTS);
+            } finally {
+                scheduler.shutdownNow();
+            }
+
+            // Every login call has to end in a new Mojang token, otherwise the cache is spinning on a valid session
+            assertEquals(ACCOUNTS * (ROUNDS + 1), pipeline.calls.get());
+            assertEquals(pipeline.calls.get(), server.getRequestCount(Endpoint.LOGIN_WITH_XBOX));
+            for(long delay : scheduler.delays)
+                assertTrue(delay < 3000, "refresh was scheduled after the token expired: " + delay + " ms");
+        }
+    }
+
+    private static class CountingPipeline extends MockPipeline {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private CountingPipeline(URI baseUri) {
+            super(baseUri);
+        }
+
+        @Override
+        public CompletableFuture<AuthSession> login(AuthSession session, Duration minValidity) {
+            calls.incrementAndGet();
+            return super.login(session, minValidity);
+        }
+
+    }
+
+    // Keeps scheduled tasks until the test runs them, regardless of their delay
+    private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+
+        private final List<Runnable> pending = new ArrayList<>();
+        private final List<Long> delays = new ArrayList<>();
+
+        private ManualScheduler() {
+            super(1);
+        }
+
+        @Override
+        public synchronized ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            delays.add(unit.toMillis(delay));
+            ScheduledFuture<?> future = super.schedule(() -> {}, 1, TimeUnit.DAYS);
+            pending.add(() -> {
+                if(!future.isCancelled())
+                    command.run();
+            });
+            this.notifyAll();
+            return future;
+        }
+
+        private void runPending(int expected) throws InterruptedException {
+            List<Runnable> tasks;
+            synchronized (this) {
+                this.awaitPending(expected);
+                tasks = new ArrayList<>(pending);
+                pending.clear();
+            }
+            tasks.forEach(Runnable::run);
+        }
+
+        private synchronized void awaitPending(int expected) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(pending.size() < expected) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                assertTrue(remaining > 0, "only " + pending.size() + " of " + expected + " refreshes were scheduled");
+                this.wait(remaining);
+            }
+        }
+
+    }
+
+}
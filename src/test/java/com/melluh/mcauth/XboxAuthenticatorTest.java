@@ -0,0 +1,42 @@
+package com.melluh.mcauth;
+
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.http.HttpTransport;
+import com.melluh.mcauth.mock.MockAuthServer;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.tokens.XboxToken;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class XboxAuthenticatorTest {
+
+    @Test
+    void emptyUnauthorizedResponseIsTyped() throws Exception {
+        try (MockAuthServer server = MockAuthServer.createBuilder().setFailure(Endpoint.XBL_TOKEN, 401).build()) {
+            XboxAuthenticator authenticator = XboxAuthenticator.createBuilder().setTransport(HttpTransport.createBuilder().build()).setBaseUri(server.getUri()).build();
+            CompletionException ex = assertThrows(CompletionException.class,
+                    () -> authenticator.getXblToken(new MicrosoftToken("revoked", System.currentTimeMillis() + 60000, "refresh")).join());
+            assertEquals(AuthErrorCode.UNAUTHORIZED, assertInstanceOf(AuthenticationException.class, ex.getCause()).errorCode());
+        }
+    }
+
+    @Test
+    void xboxErrorsAreTypedAndStackless() throws Exception {
+        try (MockAuthServer server = MockAuthServer.createBuilder().setXboxErrorRate(1, 2148916233L).build()) {
+            XboxAuthenticator authenticator = XboxAuthenticator.createBuilder().setTransport(HttpTransport.createBuilder().build()).setBaseUri(server.getUri()).build();
+            XboxToken xblToken = authenticator.getXblToken(new MicrosoftToken("access", System.currentTimeMillis() + 60000, "refresh")).join();
+            CompletionException ex = assertThrows(CompletionException.class, () -> authenticator.getXstsToken(xblToken).join());
+
+            RemoteAuthenticationException cause = assertInstanceOf(RemoteAuthenticationException.class, ex.getCause());
+            assertEquals(AuthErrorCode.NO_XBOX_PROFILE, cause.errorCode());
+            assertEquals("2148916233", cause.getRemoteCode());
+            assertEquals(0, cause.getStackTrace().length);
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.melluh.mcauth.http;
+
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+import com.melluh.mcauth.metrics.AuthListener;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestSenderTest {
+
+    private static final RetryPolicy FAST_RETRIES = RetryPolicy.createBuilder()
+            .setMaxAttempts(3)
+            .setInitialDelay(Duration.ofMillis(10))
+            .setMaxDelay(Duration.ofMillis(200))
+            .build();
+
+    @Test
+    void timeoutsAreOnlyRetriedForIdempotentEndpoints() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        try (TestServer server = new TestServer(exchange -> {
+            requests.incrementAndGet();
+            sleep(2000);
+            respond(exchange, 200, null);
+        })) {
+            Map<Endpoint, Duration> timeouts = Map.of(Endpoint.TOKEN, Duration.ofMillis(500), Endpoint.XBL_TOKEN, Duration.ofMillis(500));
+            RequestSender sender = server.sender(new RateLimiter(), timeouts);
+
+            AuthenticationException ex = assertSendFails(sender, Endpoint.TOKEN);
+            assertEquals(AuthErrorCode.TIMEOUT, ex.errorCode());
+            assertEquals(1, requests.getAndSet(0), "refresh token exchange was sent again after a timeout");
+
+            assertSendFails(sender, Endpoint.XBL_TOKEN);
+            assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    void serverErrorsAreOnlyRetriedForIdempotentEndpoints() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        try (TestServer server = new TestServer(exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 502, null);
+        })) {
+            RequestSender sender = server.sender(new RateLimiter(), Map.of());
+            assertEquals(AuthErrorCode.SERVER_ERROR, assertSendFails(sender, Endpoint.TOKEN).errorCode());
+            assertEquals(1, requests.getAndSet(0), "refresh token exchange was sent again after a 502");
+
+            assertSendFails(sender, Endpoint.XBL_TOKEN);
+            assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    void overloadIsRetriedForEveryEndpoint() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        try (TestServer server = new TestServer(exchange -> respond(exchange, requests.incrementAndGet() == 1 ? 503 : 200, "ok"))) {
+            RequestSender sender = server.sender(new RateLimiter(), Map.of());
+            assertEquals("ok", send(sender, Endpoint.TOKEN).join());
+            assertEquals(2, requests.get());
+        }
+    }
+
+    @Test
+    void retryAfterIsCappedAtMaxDelay() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        try (TestServer server = new TestServer(exchange -> {
+            if(requests.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().set("Retry-After", "3600");
+                respond(exchange, 429, null);
+            } else {
+                respond(exchange, 200, "ok");
+            }
+        })) {
+            RequestSender sender = server.sender(new RateLimiter(), Map.of());
+            long start = System.nanoTime();
+            assertEquals("ok", send(sender, Endpoint.XBL_TOKEN).join());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 2000, "Retry-After was not capped");
+        }
+    }
+
+    @Test
+    void accountErrorsDoNotOpenTheCircuit() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        try (TestServer server = new TestServer(exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 401, null);
+        })) {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(2, Duration.ofMinutes(1));
+            RequestSender sender = server.sender(new RateLimiter(), circuitBreaker, Map.of());
+            for(int i = 0; i < 5; i++)
+                assertSendFails(sender, Endpoint.XBL_TOKEN, JsonBodyHandler.INSTANCE, JsonBodyHandler::requireBody);
+
+            assertEquals(5, requests.get());
+            assertFalse(circuitBreaker.isOpen(RequestSender.hostKey(server.getUri())));
+        }
+    }
+
+    @Test
+    void serverErrorsOpenTheCircuit() throws IOException {
+        try (TestServer server = new TestServer(exchange -> respond(exchange, 503, null))) {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(2, Duration.ofMinutes(1));
+            RequestSender sender = server.sender(new RateLimiter(), circuitBreaker, Map.of());
+            assertSendFails(sender, Endpoint.XBL_TOKEN);
+
+            assertTrue(circuitBreaker.isOpen(RequestSender.hostKey(server.getUri())));
+            assertEquals(AuthErrorCode.CIRCUIT_OPEN, assertSendFails(sender, Endpoint.XBL_TOKEN).errorCode());
+        }
+    }
+
+    @Test
+    void errorResponsesFailWithoutStackTraces() throws IOException {
+        try (TestServer server = new TestServer(exchange -> respond(exchange, 401, null))) {
+            RequestSender sender = server.sender(new RateLimiter(), Map.of());
+            Throwable ex = send(sender, Endpoint.XBL_TOKEN, JsonBodyHandler.INSTANCE, JsonBodyHandler::requireBody).handle((result, failure) -> failure).join();
+
+            // The exception itself, not a CompletionException that had to fill in its own stack trace
+            assertEquals(AuthErrorCode.UNAUTHORIZED, assertInstanceOf(AuthenticationException.class, ex).errorCode());
+            assertEquals(0, ex.getStackTrace().length);
+        }
+    }
+
+    @Test
+    void pauseAppliesToHostsWithoutLimit() {
+        RateLimiter rateLimiter = new RateLimiter();
+        assertEquals(0, rateLimiter.reserve("example.com"));
+        rateLimiter.pause("example.com", 500);
+        assertTrue(rateLimiter.reserve("example.com") > 400);
+        assertEquals(0, rateLimiter.reserve("example.org"));
+    }
+
+    private static AuthenticationException assertSendFails(RequestSender sender, Endpoint endpoint) {
+        return assertSendFails(sender, endpoint, BodyHandlers.ofString());
+    }
+
+    private static <B> AuthenticationException assertSendFails(RequestSender sender, Endpoint endpoint, BodyHandler<B> bodyHandler) {
+        return assertSendFails(sender, endpoint, bodyHandler, HttpResponse::body);
+    }
+
+    private static <B, T> AuthenticationException assertSendFails(RequestSender sender, Endpoint endpoint, BodyHandler<B> bodyHandler, RequestSender.ResponseParser<B, T> parser) {
+        CompletionException ex = assertThrows(CompletionException.class, () -> send(sender, endpoint, bodyHandler, parser).join());
+        return assertInstanceOf(AuthenticationException.class, ex.getCause());
+    }
+
+    private static CompletableFuture<String> send(RequestSender sender, Endpoint endpoint) {
+        return send(sender, endpoint, BodyHandlers.ofString());
+    }
+
+    private static <B> CompletableFuture<B> send(RequestSender sender, Endpoint endpoint, BodyHandler<B> bodyHandler) {
+        return send(sender, endpoint, bodyHandler, HttpResponse::body);
+    }
+
+    private static <B, T> CompletableFuture<T> send(RequestSender sender, Endpoint endpoint, BodyHandler<B> bodyHandler, RequestSender.ResponseParser<B, T> parser) {
+        HttpRequest request = sender.newRequest(endpoint).POST(HttpRequest.BodyPublishers.noBody()).build();
+        return sender.send(endpoint, request, bodyHandler, parser, "Test request failed");
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        try (exchange) {
+            byte[] bytes = body != null ? body.getBytes() : null;
+            exchange.sendResponseHeaders(statusCode, bytes != null ? bytes.length : -1);
+            if(bytes != null)
+                exchange.getResponseBody().write(bytes);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class TestServer implements AutoCloseable {
+
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+
+        private TestServer(Handler handler) throws IOException {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                handler.handle(exchange);
+            });
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        private RequestSender sender(RateLimiter rateLimiter, Map<Endpoint, Duration> timeouts) {
+            return this.sender(rateLimiter, CircuitBreaker.disabled(), timeouts);
+        }
+
+        private RequestSender sender(RateLimiter rateLimiter, CircuitBreaker circuitBreaker, Map<Endpoint, Duration> timeouts) {
+            Map<Endpoint, URI> uris = Map.of(Endpoint.TOKEN, this.getUri(), Endpoint.XBL_TOKEN, this.getUri());
+            return new RequestSender(HttpClient.newHttpClient(), null, FAST_RETRIES, rateLimiter, circuitBreaker,
+                    AuthListener.NONE, uris, timeouts);
+        }
+
+        private URI getUri() {
+            return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.melluh.mcauth.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VirtualThreadsTest {
+
+    // Without usable virtual threads (Java 17, or 19/20 without --enable-preview) this is the daemon pool
+    @Test
+    void newExecutorAlwaysRunsTasks() {
+        ExecutorService executor = VirtualThreads.newExecutor();
+        try {
+            assertEquals("done", CompletableFuture.supplyAsync(() -> "done", executor).join());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
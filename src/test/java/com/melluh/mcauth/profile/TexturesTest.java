@@ -0,0 +1,47 @@
+package com.melluh.mcauth.profile;
+
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TexturesTest {
+
+    @Test
+    void decodesSkinAndCape() {
+        Textures textures = Textures.decode(encode("{\"timestamp\":1,\"profileId\":\"069a79f444e94726a5befca90e38aaf5\",\"profileName\":\"Notch\","
+                + "\"textures\":{\"SKIN\":{\"url\":\"http://textures.minecraft.net/texture/a\",\"metadata\":{\"model\":\"slim\"}}}}"));
+        assertEquals(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), textures.profileId());
+        assertTrue(textures.hasSlimSkin());
+        assertNull(textures.cape());
+    }
+
+    @Test
+    void malformedPropertiesFailWithInvalidResponse() {
+        assertInvalid(encode("{\"timestamp\":1,\"profileId\":\"not-a-uuid\",\"profileName\":\"Notch\",\"textures\":{}}"));
+        assertInvalid(encode("{\"timestamp\":1,\"profileId\":\"069a79f444e94726a5befca90e38aaf5\",\"profileName\":\"Notch\"}"));
+        assertInvalid(encode("{\"timestamp\":1,\"profileName\":\"Notch\",\"textures\":{}}"));
+        assertInvalid(encode("{\"timestamp\":1,\"profileId\":12,\"profileName\":\"Notch\",\"textures\":{}}"));
+        assertInvalid(encode("{\"timestamp\":1,\"profileId\":\"069a79f444e94726a5befca90e38aaf5\",\"profileName\":\"Notch\",\"textures\":{\"SKIN\":{}}}"));
+        assertInvalid(encode("not json"));
+        assertInvalid("%%%");
+    }
+
+    private static void assertInvalid(String base64) {
+        AuthenticationException ex = assertThrows(AuthenticationException.class, () -> Textures.decode(base64));
+        assertEquals(AuthErrorCode.INVALID_RESPONSE, ex.errorCode());
+    }
+
+    private static String encode(String json) {
+        return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
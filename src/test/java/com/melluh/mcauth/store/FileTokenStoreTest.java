@@ -0,0 +1,141 @@
+package com.melluh.mcauth.store;
+
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileTokenStoreTest {
+
+    @Test
+    void overwritesTriggerCompaction() throws IOException {
+        Path path = Files.createTempDirectory("mc-auth-test").resolve("tokens.db");
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).setSyncWrites(false).build()) {
+            for(int i = 0; i < 5000; i++)
+                store.put("account", new MicrosoftToken("access-" + i, i, "refresh-" + i));
+            store.put("other", new MicrosoftToken("other", 1, "other"));
+
+            // 5000 records of ~40 bytes would be ~200 KiB without compaction
+            assertTrue(Files.size(path) < 100 * 1024, "log was not compacted: " + Files.size(path) + " bytes");
+            assertEquals("access-4999", store.get("account").getValue());
+        }
+
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+            assertEquals("access-4999", store.get("account").getValue());
+            assertEquals(4999, store.getExpiryTime("account"));
+            assertEquals("other", store.get("other").getValue());
+        }
+    }
+
+    @Test
+    void corruptRecordInTheMiddleIsSkipped() throws IOException {
+        Path path = Files.createTempDirectory("mc-auth-test").resolve("tokens.db");
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+            store.put("first", new MicrosoftToken("access-first", 1, "refresh-first"));
+            store.put("second", new MicrosoftToken("access-second", 2, "refresh-second"));
+            store.put("third", new MicrosoftToken("access-third", 3, "refresh-third"));
+        }
+        long fileSize = Files.size(path);
+        corrupt(path, "access-second");
+
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+            assertNull(store.get("second"));
+            assertEquals("access-first", store.get("first").getValue());
+            assertEquals("access-third", store.get("third").getValue());
+        }
+        assertEquals(fileSize, Files.size(path));
+    }
+
+    @Test
+    void tornLastRecordIsCutOff() throws IOException {
+        Path path = Files.createTempDirectory("mc-auth-test").resolve("tokens.db");
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+            store.put("first", new MicrosoftToken("access-first", 1, "refresh-first"));
+        }
+        long intactSize = Files.size(path);
+
+        // A last record that fails its CRC, then one whose length says it never finished
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+            store.put("second", new MicrosoftToken("access-second", 2, "refresh-second"));
+        }
+        corrupt(path, "access-second");
+        for(byte[] torn : new byte[][] { {}, { 0, 0, 0, 50, 1, 2, 3 }, { 0, 0 }, { 0, 0, 0, 0, 0, 0 } }) {
+            Files.write(path, torn, StandardOpenOption.APPEND);
+            try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+                assertNull(store.get("second"));
+                assertEquals("access-first", store.get("first").getValue());
+            }
+            assertEquals(intactSize, Files.size(path));
+        }
+    }
+
+    @Test
+    void encryptionSettingMustMatchTheFile() throws Exception {
+        Path path = Files.createTempDirectory("mc-auth-test").resolve("tokens.db");
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(128);
+        SecretKey key = generator.generateKey();
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).setEncryptionKey(key).build()) {
+            store.put("account", new MicrosoftToken("access", 0, "refresh"));
+        }
+
+        IOException ex = assertThrows(IOException.class, () -> FileTokenStore.createBuilder(path).build());
+        assertTrue(ex.getMessage().contains("no encryption key"), ex.getMessage());
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).setEncryptionKey(key).build()) {
+            assertEquals("access", store.get("account").getValue());
+        }
+
+        Path plainPath = path.resolveSibling("plain.db");
+        FileTokenStore.createBuilder(plainPath).build().close();
+        assertThrows(IOException.class, () -> FileTokenStore.createBuilder(plainPath).setEncryptionKey(key).build());
+    }
+
+    @Test
+    void compactedStoreStaysLocked() throws IOException {
+        Path path = Files.createTempDirectory("mc-auth-test").resolve("tokens.db");
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).setSyncWrites(false).build()) {
+            for(int i = 0; i < 100; i++)
+                store.put("account", new MicrosoftToken("access-" + i, i, "refresh-" + i));
+            store.compact();
+
+            assertThrows(IOException.class, () -> FileTokenStore.createBuilder(path).build());
+            store.put("other", new MicrosoftToken("other", 1, "other"));
+            assertEquals("access-99", store.get("account").getValue());
+        }
+
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+            assertEquals("access-99", store.get("account").getValue());
+            assertEquals("other", store.get("other").getValue());
+        }
+    }
+
+    @Test
+    void rejectsKeysThatDoNotFitTheRecord() throws IOException {
+        Path path = Files.createTempDirectory("mc-auth-test").resolve("tokens.db");
+        try (FileTokenStore store = FileTokenStore.createBuilder(path).build()) {
+            String key = "k".repeat(70000);
+            assertThrows(IllegalArgumentException.class, () -> store.put(key, new MicrosoftToken("access", 0, "refresh")));
+            assertNull(store.get(key));
+        }
+    }
+
+    // Flips a byte of the record that contains the given value
+    private static void corrupt(Path path, String value) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        String content = new String(bytes, StandardCharsets.ISO_8859_1);
+        bytes[content.indexOf(value)] ^= 1;
+        Files.write(path, bytes);
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.melluh.mcauth.tokens;
+
+import com.grack.nanojson.JsonObject;
+import com.melluh.mcauth.AuthErrorCode;
+import com.melluh.mcauth.AuthenticationException;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PlayerCertificatesTest {
+
+    private static final String SIGNATURE = Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3 });
+
+    @Test
+    void parsesKeysAndTimes() throws Exception {
+        KeyPair keys = generateKeys();
+        PlayerCertificates certificates = PlayerCertificates.fromJson(json(keys, "2026-01-01T00:00:00Z"));
+        assertEquals(keys.getPublic(), certificates.getPublicKey());
+        assertEquals(1767225600000L, certificates.getExpiryTime());
+        assertNull(certificates.getPublicKeySignatureV2());
+    }
+
+    @Test
+    void missingOrMalformedFieldsFailWithInvalidResponse() throws Exception {
+        KeyPair keys = generateKeys();
+        for(String field : new String[] { "keyPair", "publicKeySignature", "expiresAt", "refreshedAfter" }) {
+            JsonObject json = json(keys, "2026-01-01T00:00:00Z");
+            json.remove(field);
+            assertInvalid(json);
+        }
+
+        JsonObject json = json(keys, "2026-01-01T00:00:00Z");
+        json.getObject("keyPair").remove("privateKey");
+        assertInvalid(json);
+
+        json = json(keys, "2026-01-01T00:00:00Z");
+        json.put("publicKeySignature", 12);
+        assertInvalid(json);
+
+        assertInvalid(json(keys, "tomorrow"));
+    }
+
+    private static void assertInvalid(JsonObject json) {
+        AuthenticationException ex = assertThrows(AuthenticationException.class, () -> PlayerCertificates.fromJson(json));
+        assertEquals(AuthErrorCode.INVALID_RESPONSE, ex.errorCode());
+    }
+
+    private static JsonObject json(KeyPair keys, String expiresAt) {
+        return JsonObject.builder()
+                .object("keyPair")
+                    .value("privateKey", pem("RSA PRIVATE KEY", keys.getPrivate().getEncoded()))
+                    .value("publicKey", pem("RSA PUBLIC KEY", keys.getPublic().getEncoded()))
+                .end()
+                .value("publicKeySignature", SIGNATURE)
+                .value("expiresAt", expiresAt)
+                .value("refreshedAfter", "2025-12-31T00:00:00Z")
+                .done();
+    }
+
+    private static String pem(String type, byte[] encoded) {
+        return "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder().encodeToString(encoded) + "\n-----END " + type + "-----\n";
+    }
+
+    private static KeyPair generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+
+}
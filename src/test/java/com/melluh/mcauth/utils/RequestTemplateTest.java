@@ -0,0 +1,55 @@
+package com.melluh.mcauth.utils;
+
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestTemplateTest {
+
+    private static final String[] VALUES = { "", "plain", "a b&c=d+e%f", "quote\" back\\slash / slash", "line\nbreak\ttab\u0001",
+            "\u00e9t\u00e9 \u4e2d\u6587 a\uD83D\uDE00b", "XBL3.0 x=123;eyJ0eXAiOiJKV1Qi.abc-_" };
+
+    @Test
+    void formTemplateMatchesFormBody() {
+        for(String first : VALUES) {
+            for(String second : VALUES) {
+                FormBody constant = new FormBody().add("client_id", "test-client").add("scope", "XboxLive.signin offline_access");
+                byte[] filled = constant.asTemplate("refresh_token", "device_code").fill(first, second);
+
+                String expected = constant.add("refresh_token", first).add("device_code", second).asRequestString();
+                assertEquals(expected, new String(filled, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void formTemplateWithoutConstantFields() {
+        assertEquals(new FormBody().add("code", "a b").asRequestString(), new String(new FormBody().asTemplate("code").fill("a b"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void jsonTemplateMatchesJsonWriter() {
+        RequestTemplate template = RequestTemplate.json(JsonWriter.string(JsonObject.builder()
+                .value("accessToken", RequestTemplate.PLACEHOLDER)
+                .value("selectedProfile", RequestTemplate.PLACEHOLDER)
+                .value("serverId", "prefix " + RequestTemplate.PLACEHOLDER)
+                .done()));
+
+        for(String first : VALUES) {
+            for(String second : VALUES) {
+                String filled = new String(template.fill(first, second, second), StandardCharsets.UTF_8);
+                String expected = JsonWriter.string(JsonObject.builder()
+                        .value("accessToken", first)
+                        .value("selectedProfile", second)
+                        .value("serverId", "prefix " + second)
+                        .done());
+                assertEquals(expected, filled);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.melluh.mcauth.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ServerHasherTest {
+
+    private static final String[] SERVER_IDS = { "", "server", "\u00e9t\u00e9", "\u4e2d\u6587", "a\uD83D\uDE00b", "\uD83D", "x\uDE00\uD83D" };
+
+    @Test
+    void matchesBigIntegerHash() throws Exception {
+        Random random = new Random(42);
+        for(int i = 0; i < 1000; i++) {
+            byte[] sharedSecret = new byte[16], publicKey = new byte[random.nextInt(300)];
+            random.nextBytes(sharedSecret);
+            random.nextBytes(publicKey);
+            String serverId = SERVER_IDS[i % SERVER_IDS.length];
+            assertEquals(bigIntegerHash(serverId, sharedSecret, publicKey), ServerHasher.hash(serverId, sharedSecret, publicKey), "server id " + serverId);
+        }
+    }
+
+    @Test
+    void toSignedHexMatchesBigInteger() {
+        Random random = new Random(42);
+        byte[][] edgeCases = { new byte[20], { (byte) 0x80, 0, 0 }, { (byte) 0xFF, (byte) 0xFF }, { 0, 0, 1 }, { (byte) 0xFF, 0 } };
+        for(byte[] bytes : edgeCases)
+            assertEquals(new BigInteger(bytes).toString(16), ServerHasher.toSignedHex(bytes.clone()));
+
+        for(int i = 0; i < 10000; i++) {
+            byte[] bytes = new byte[20];
+            random.nextBytes(bytes);
+            assertEquals(new BigInteger(bytes).toString(16), ServerHasher.toSignedHex(bytes.clone()));
+        }
+    }
+
+    // The implementation AuthUtils.calculateServerHash used before ServerHasher
+    private static String bigIntegerHash(String serverId, byte[] sharedSecret, byte[] publicKey) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(serverId.getBytes(StandardCharsets.ISO_8859_1));
+        digest.update(sharedSecret);
+        digest.update(publicKey);
+        return new BigInteger(digest.digest()).toString(16);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.melluh.mcauth.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneCall() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.execute("key", () -> { calls.incrementAndGet(); return call; });
+        CompletableFuture<String> second = singleFlight.execute("key", () -> { calls.incrementAndGet(); return call; });
+        CompletableFuture<String> other = singleFlight.execute("other", () -> { calls.incrementAndGet(); return CompletableFuture.completedFuture("other"); });
+
+        call.complete("value");
+        assertEquals("value", first.join());
+        assertEquals("value", second.join());
+        assertEquals("other", other.join());
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.size());
+
+        // Once completed, the next caller starts a new call
+        singleFlight.execute("key", () -> { calls.incrementAndGet(); return CompletableFuture.completedFuture("new"); }).join();
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void cancellingOneCallerKeepsTheCallForOthers() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("key", () -> call);
+        CompletableFuture<String> second = singleFlight.execute("key", () -> call);
+
+        first.cancel(false);
+        assertFalse(call.isCancelled());
+        call.complete("value");
+        assertEquals("value", second.join());
+    }
+
+    @Test
+    void failuresReachEveryCallerAndAreNotCached() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CompletableFuture<String> failed = singleFlight.execute("key", () -> { throw new IllegalStateException("broken"); });
+
+        CompletionException ex = assertThrows(CompletionException.class, failed::join);
+        assertInstanceOf(IllegalStateException.class, ex.getCause());
+        assertEquals(0, singleFlight.size());
+        assertEquals("value", singleFlight.execute("key", () -> CompletableFuture.completedFuture("value")).join());
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.melluh.mcauth.mock;
+
+import com.melluh.mcauth.AuthSession;
+import com.melluh.mcauth.LoginPipeline;
+import com.melluh.mcauth.MicrosoftAuthenticator;
+import com.melluh.mcauth.MojangAuthenticator;
+import com.melluh.mcauth.XboxAuthenticator;
+import com.melluh.mcauth.http.HttpTransport;
+import com.melluh.mcauth.metrics.LatencyHistogram;
+import com.melluh.mcauth.metrics.MetricsRecorder;
+import com.melluh.mcauth.tokens.MicrosoftToken;
+import com.melluh.mcauth.utils.AsyncSemaphore;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Runs full logins (refresh -> XBL -> XSTS -> Mojang -> profile) against a MockAuthServer and reports throughput.
+ * Every login starts from an expired Microsoft token with its own refresh token, so nothing is coalesced or skipped.
+ *
+ * Usage: LoginLoadDriver [logins] [concurrency] [latency ms]
+ */
+public class LoginLoadDriver {
+
+    private final LoginPipeline pipeline;
+    private final int concurrency;
+
+    public LoginLoadDriver(URI baseUri, HttpTransport transport, MetricsRecorder metrics, int concurrency) {
+        Objects.requireNonNull(baseUri, "baseUri cannot be null");
+        if(concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        this.pipeline = new LoginPipeline(
+                MicrosoftAuthenticator.createBuilder("mock-client").setTransport(transport).setBaseUri(baseUri).setListener(metrics).build(),
+                XboxAuthenticator.createBuilder().setTransport(transport).setBaseUri(baseUri).setListener(metrics).build(),
+                MojangAuthenticator.createBuilder().setTransport(transport).setBaseUri(baseUri).setListener(metrics).build());
+        this.concurrency = concurrency;
+    }
+
+    public Result run(int logins) {
+        AsyncSemaphore semaphore = new AsyncSemaphore(concurrency);
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder failures = new LongAdder();
+
+        long start = System.nanoTime();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[logins];
+        for(int i = 0; i < logins; i++) {
+            AuthSession session = AuthSession.of(new MicrosoftToken("expired", 0, "load-" + i));
+            futures[i] = semaphore.run(() -> {
+                long loginStart = System.nanoTime();
+                return pipeline.login(session).whenComplete((result, ex) -> {
+                    if(ex != null) {
+                        failures.increment();
+                    } else {
+                        latencies.record(System.nanoTime() - loginStart);
+                    }
+                });
+            }).exceptionally(ex -> null);
+        }
+        CompletableFuture.allOf(futures).join();
+
+        return new Result(logins, failures.sum(), Duration.ofNanos(System.nanoTime() - start), latencies.snapshot());
+    }
+
+    public record Result(int logins, long failures, Duration elapsed, LatencyHistogram.Snapshot latency) {
+
+        public double getLoginsPerSecond() {
+            return (logins - failures) / (elapsed.toNanos() / 1e9);
+        }
+
+        public double getLoginsPerSecondPerCore() {
+            return this.getLoginsPerSecond() / Runtime.getRuntime().availableProcessors();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d logins (%d failed) in %d ms: %.1f logins/s, %.1f logins/s/core, latency %s",
+                    logins, failures, elapsed.toMillis(), this.getLoginsPerSecond(), this.getLoginsPerSecondPerCore(), latency);
+        }
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        int logins = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        Duration latency = Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 0);
+
+        try (MockAuthServer server = MockAuthServer.createBuilder().setLatency(latency, Duration.ZERO).build()) {
+            MetricsRecorder metrics = new MetricsRecorder();
+            LoginLoadDriver driver = new LoginLoadDriver(server.getUri(), HttpTransport.createBuilder().build(), metrics, concurrency);
+
+            driver.run(Math.min(logins, 1000)); // warm up
+            metrics.reset();
+            System.out.println(driver.run(logins));
+            metrics.snapshot().forEach((endpoint, snapshot) -> {
+                if(snapshot.latency().getCount() > 0)
+                    System.out.println(endpoint + ": " + snapshot.latency());
+            });
+        }
+    }
+
+}
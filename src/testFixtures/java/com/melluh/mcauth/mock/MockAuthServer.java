@@ -0,0 +1,464 @@
+package com.melluh.mcauth.mock;
+
+import com.grack.nanojson.JsonArray;
+import com.grack.nanojson.JsonObject;
+import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.grack.nanojson.JsonWriter;
+import com.melluh.mcauth.http.Endpoint;
+import com.melluh.mcauth.utils.AuthUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * In-process stand-in for the Microsoft, Xbox Live and Mojang endpoints used by the authenticators, for offline
+ * load and latency tests. Point a builder at it with setBaseUri(server.getUri()). Tokens are made up, but the
+ * Mojang access token is a JWT with the usual claims, and the profile endpoint answers for the profile in it.
+ */
+public class MockAuthServer implements AutoCloseable {
+
+    private static final String JWT_HEADER = base64Url("{\"alg\":\"RS256\",\"typ\":\"JWT\"}");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+
+    private final long latency, latencyJitter;
+    private final double rateLimitRate, xboxErrorRate;
+    private final long xboxErrorCode;
+    private final int pendingPolls;
+    private final long tokenLifetime;
+    private final boolean ownsGame;
+    private final Map<String, Object> extraClaims;
+    private final Map<Endpoint, Integer> failures;
+
+    private final Map<Endpoint, LongAdder> requestCounts = new EnumMap<>(Endpoint.class);
+    private final Map<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private volatile KeyPair certificateKeys; // generated on first use, every player gets the same pair
+
+    private MockAuthServer(Builder builder) throws IOException {
+        this.latency = builder.latency.toNanos();
+        this.latencyJitter = builder.latencyJitter.toNanos();
+        this.rateLimitRate = builder.rateLimitRate;
+        this.xboxErrorRate = builder.xboxErrorRate;
+        this.xboxErrorCode = builder.xboxErrorCode;
+        this.pendingPolls = builder.pendingPolls;
+        this.tokenLifetime = builder.tokenLifetime.toSeconds();
+        this.ownsGame = builder.ownsGame;
+        this.extraClaims = new LinkedHashMap<>(builder.extraClaims);
+        this.failures = new EnumMap<>(builder.failures);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(builder.threads, runnable -> {
+            Thread thread = new Thread(runnable, "mock-auth-server-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mock-auth-server-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 0);
+        for(Endpoint endpoint : Endpoint.values()) {
+            requestCounts.put(endpoint, new LongAdder());
+            String path = endpoint.getDefaultUri().getPath();
+            server.createContext(path, exchange -> this.handle(endpoint, path, exchange));
+        }
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    // Base URI for AuthenticatorBuilder.setBaseUri
+    public URI getUri() {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort() + "/");
+    }
+
+    public long getRequestCount(Endpoint endpoint) {
+        return requestCounts.get(endpoint).sum();
+    }
+
+    public Map<Endpoint, Long> getRequestCounts() {
+        Map<Endpoint, Long> counts = new EnumMap<>(Endpoint.class);
+        requestCounts.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private void handle(Endpoint endpoint, String path, HttpExchange exchange) throws IOException {
+        byte[] requestBody = exchange.getRequestBody().readAllBytes();
+        if(!exchange.getRequestURI().getPath().equals(path)) {
+            this.respond(exchange, new Response(404, error("Not found")));
+            return;
+        }
+
+        requestCounts.get(endpoint).increment();
+        Response response = ThreadLocalRandom.current().nextDouble() < rateLimitRate
+                ? new Response(429, null)
+                : this.createResponse(endpoint, exchange, new String(requestBody, StandardCharsets.UTF_8));
+
+        long delay = latency + (latencyJitter > 0 ? ThreadLocalRandom.current().nextLong(latencyJitter) : 0);
+        if(delay > 0) {
+            scheduler.schedule(() -> executor.execute(() -> this.respond(exchange, response)), delay, TimeUnit.NANOSECONDS);
+        } else {
+            this.respond(exchange, response);
+        }
+    }
+
+    private Response createResponse(Endpoint endpoint, HttpExchange exchange, String body) {
+        Integer failure = failures.get(endpoint);
+        if(failure != null)
+            return new Response(failure, null);
+
+        return switch (endpoint) {
+            case DEVICE_CODE -> this.deviceCode();
+            case TOKEN -> this.token(parseForm(body));
+            case XBL_TOKEN -> this.xboxToken("xbl");
+            case XSTS_TOKEN -> ThreadLocalRandom.current().nextDouble() < xboxErrorRate ? xboxError(xboxErrorCode) : this.xboxToken("xsts");
+            case LOGIN_WITH_XBOX -> this.loginWithXbox();
+            case PROFILE -> profile(exchange.getRequestHeaders().getFirst("Authorization"));
+            case PLAYER_CERTIFICATES -> this.certificates();
+            case SESSION_JOIN -> new Response(204, null);
+            case HAS_JOINED -> hasJoined(parseForm(exchange.getRequestURI().getRawQuery()));
+            default -> new Response(404, error("Endpoint not supported by MockAuthServer"));
+        };
+    }
+
+    private Response deviceCode() {
+        long id = ids.incrementAndGet();
+        return new Response(200, JsonObject.builder()
+                .value("user_code", "MOCK" + id)
+                .value("device_code", "mock-device-" + id)
+                .value("verification_uri", "https://www.microsoft.com/link")
+                .value("expires_in", 900)
+                .value("interval", 1)
+                .value("message", "Mock device code")
+                .done());
+    }
+
+    private Response token(Map<String, String> form) {
+        String deviceCode = form.get("device_code");
+        if(deviceCode != null) {
+            int poll = polls.computeIfAbsent(deviceCode, key -> new AtomicInteger()).incrementAndGet();
+            if(poll <= pendingPolls)
+                return new Response(400, oauthError("authorization_pending", "The user has not yet finished authorizing"));
+            polls.remove(deviceCode);
+        } else if(form.get("refresh_token") == null) {
+            return new Response(400, oauthError("invalid_request", "Missing refresh_token or device_code"));
+        }
+
+        long id = ids.incrementAndGet();
+        return new Response(200, JsonObject.builder()
+                .value("token_type", "bearer")
+                .value("scope", form.getOrDefault("scope", ""))
+                .value("expires_in", tokenLifetime)
+                .value("access_token", "mock-microsoft-" + id)
+                .value("refresh_token", "mock-refresh-" + id)
+                .done());
+    }
+
+    private Response xboxToken(String type) {
+        Instant now = Instant.now();
+        return new Response(200, JsonObject.builder()
+                .value("IssueInstant", now.toString())
+                .value("NotAfter", now.plusSeconds(tokenLifetime).toString())
+                .value("Token", "mock-" + type + "-" + ids.incrementAndGet())
+                .object("DisplayClaims")
+                    .array("xui")
+                        .object()
+                            .value("uhs", "mockuserhash")
+                        .end()
+                    .end()
+                .end()
+                .done());
+    }
+
+    private static Response xboxError(long code) {
+        return new Response(401, JsonObject.builder()
+                .value("Identity", "0")
+                .value("XErr", code)
+                .value("Message", "")
+                .value("Redirect", "")
+                .done());
+    }
+
+    private Response loginWithXbox() {
+        long id = ids.incrementAndGet();
+        long now = System.currentTimeMillis() / 1000;
+
+        JsonObject claims = new JsonObject();
+        claims.put("xuid", String.valueOf(2535400000000000L + id));
+        claims.put("agg", "Adult");
+        if(ownsGame)
+            claims.put("profiles", JsonObject.builder().value("mc", UUID.nameUUIDFromBytes(("mock-" + id).getBytes(StandardCharsets.UTF_8)).toString()).done());
+        claims.put("iat", now);
+        claims.put("exp", now + tokenLifetime);
+        claims.putAll(extraClaims);
+        claims.values().removeIf(Objects::isNull);
+
+        String jwt = JWT_HEADER + "." + base64Url(JsonWriter.string(claims)) + ".bW9jaw";
+        return new Response(200, JsonObject.builder()
+                .value("username", UUID.randomUUID().toString())
+                .array("roles", new JsonArray())
+                .value("access_token", jwt)
+                .value("token_type", "Bearer")
+                .value("expires_in", tokenLifetime)
+                .done());
+    }
+
+    // Reads the profile ID back from the JWT handed out by loginWithXbox
+    private static Response profile(String authorization) {
+        if(authorization == null || !authorization.startsWith("Bearer "))
+            return new Response(401, error("Unauthorized"));
+
+        String[] parts = authorization.substring(7).split("\\.");
+        try {
+            JsonObject claims = JsonParser.object().from(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+            JsonObject profiles = claims.getObject("profiles", null);
+            String profileId = profiles != null ? profiles.getString("mc", null) : null;
+            if(profileId == null)
+                return new Response(404, error("NOT_FOUND"));
+
+            UUID uuid = UUID.fromString(profileId);
+            return new Response(200, JsonObject.builder()
+                    .value("id", AuthUtils.minifyUuid(uuid))
+                    .value("name", nameOf(uuid))
+                    .array("skins", new JsonArray())
+                    .array("capes", new JsonArray())
+                    .done());
+        } catch (JsonParserException | IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+            return new Response(401, error("Unauthorized"));
+        }
+    }
+
+    private Response certificates() {
+        KeyPair keys = certificateKeys;
+        if(keys == null) {
+            synchronized (this) {
+                keys = certificateKeys;
+                if(keys == null) {
+                    try {
+                        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                        generator.initialize(2048);
+                        this.certificateKeys = keys = generator.generateKeyPair();
+                    } catch (NoSuchAlgorithmException ex) {
+                        throw new IllegalStateException("RSA key generation not available", ex);
+                    }
+                }
+            }
+        }
+
+        Instant now = Instant.now();
+        String signature = Base64.getEncoder().encodeToString(("mock-signature-" + ids.incrementAndGet()).getBytes(StandardCharsets.UTF_8));
+        return new Response(200, JsonObject.builder()
+                .object("keyPair")
+                    .value("privateKey", pem("RSA PRIVATE KEY", keys.getPrivate().getEncoded()))
+                    .value("publicKey", pem("RSA PUBLIC KEY", keys.getPublic().getEncoded()))
+                .end()
+                .value("publicKeySignature", signature)
+                .value("publicKeySignatureV2", signature)
+                .value("expiresAt", now.plusSeconds(tokenLifetime).toString())
+                .value("refreshedAfter", now.plusSeconds(tokenLifetime * 5 / 6).toString())
+                .done());
+    }
+
+    private static String pem(String type, byte[] encoded) {
+        return "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder(76, new byte[] { '\n' }).encodeToString(encoded) + "\n-----END " + type + "-----\n";
+    }
+
+    private static Response hasJoined(Map<String, String> query) {
+        String username = query.get("username");
+        if(username == null)
+            return new Response(204, null);
+
+        UUID uuid = UUID.nameUUIDFromBytes(("mock-" + username).getBytes(StandardCharsets.UTF_8));
+        return new Response(200, JsonObject.builder()
+                .value("id", AuthUtils.minifyUuid(uuid))
+                .value("name", username)
+                .array("properties", new JsonArray())
+                .done());
+    }
+
+    private void respond(HttpExchange exchange, Response response) {
+        try (exchange) {
+            byte[] body = response.body() != null ? JsonWriter.string(response.body()).getBytes(StandardCharsets.UTF_8) : null;
+            if(body != null)
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.statusCode(), body != null ? body.length : -1);
+            if(body != null) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (IOException ex) {
+            // client went away, nothing to do
+        }
+    }
+
+    private static String nameOf(UUID uuid) {
+        return "mock_" + AuthUtils.minifyUuid(uuid).substring(0, 8);
+    }
+
+    private static JsonObject error(String message) {
+        return JsonObject.builder().value("error", message).done();
+    }
+
+    private static JsonObject oauthError(String error, String description) {
+        return JsonObject.builder().value("error", error).value("error_description", description).done();
+    }
+
+    private static Map<String, String> parseForm(String form) {
+        Map<String, String> values = new HashMap<>();
+        if(form == null || form.isEmpty())
+            return values;
+        for(String pair : form.split("&")) {
+            int separator = pair.indexOf('=');
+            if(separator > 0)
+                values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static String base64Url(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record Response(int statusCode, JsonObject body) {}
+
+    public static MockAuthServer create() throws IOException {
+        return createBuilder().build();
+    }
+
+    public static Builder createBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private int port;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private Duration latency = Duration.ZERO;
+        private Duration latencyJitter = Duration.ZERO;
+        private double rateLimitRate, xboxErrorRate;
+        private long xboxErrorCode = 2148916233L;
+        private int pendingPolls;
+        private Duration tokenLifetime = Duration.ofHours(1);
+        private boolean ownsGame = true;
+        private final Map<String, Object> extraClaims = new LinkedHashMap<>();
+        private final Map<Endpoint, Integer> failures = new EnumMap<>(Endpoint.class);
+
+        private Builder() {}
+
+        // 0 (the default) picks a free port
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder setThreads(int threads) {
+            if(threads < 1)
+                throw new IllegalArgumentException("threads must be at least 1");
+            this.threads = threads;
+            return this;
+        }
+
+        // Every response is delayed by the latency plus a random part of the jitter
+        public Builder setLatency(Duration latency, Duration jitter) {
+            this.latency = Objects.requireNonNull(latency, "latency cannot be null");
+            this.latencyJitter = Objects.requireNonNull(jitter, "jitter cannot be null");
+            return this;
+        }
+
+        // Fraction of requests to any endpoint answered with 429
+        public Builder setRateLimitRate(double rateLimitRate) {
+            this.rateLimitRate = requireFraction(rateLimitRate);
+            return this;
+        }
+
+        // Fraction of XSTS requests answered with the XErr code, 2148916233 (no Xbox profile) by default
+        public Builder setXboxErrorRate(double xboxErrorRate, long xboxErrorCode) {
+            this.xboxErrorRate = requireFraction(xboxErrorRate);
+            this.xboxErrorCode = xboxErrorCode;
+            return this;
+        }
+
+        // Number of authorization_pending answers for each device code before it is accepted
+        public Builder setPendingPolls(int pendingPolls) {
+            this.pendingPolls = pendingPolls;
+            return this;
+        }
+
+        public Builder setTokenLifetime(Duration tokenLifetime) {
+            this.tokenLifetime = Objects.requireNonNull(tokenLifetime, "tokenLifetime cannot be null");
+            return this;
+        }
+
+        // Without the game the Mojang JWT has no profiles claim and the profile endpoint returns 404
+        public Builder setOwnsGame(boolean ownsGame) {
+            this.ownsGame = ownsGame;
+            return this;
+        }
+
+        // Adds or overrides a claim of the Mojang JWT, null removes it
+        public Builder setJwtClaim(String name, Object value) {
+            extraClaims.put(Objects.requireNonNull(name, "name cannot be null"), value);
+            return this;
+        }
+
+        // Answers every request to the endpoint with the status code and an empty body
+        public Builder setFailure(Endpoint endpoint, int statusCode) {
+            failures.put(Objects.requireNonNull(endpoint, "endpoint cannot be null"), statusCode);
+            return this;
+        }
+
+        public MockAuthServer build() throws IOException {
+            return new MockAuthServer(this);
+        }
+
+        private static double requireFraction(double value) {
+            if(value < 0 || value > 1)
+                throw new IllegalArgumentException("rate must be between 0 and 1");
+            return value;
+        }
+
+    }
+
+}
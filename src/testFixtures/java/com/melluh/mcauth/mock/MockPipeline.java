@@ -0,0 +1,24 @@
+package com.melluh.mcauth.mock;
+
+import com.melluh.mcauth.LoginPipeline;
+import com.melluh.mcauth.MicrosoftAuthenticator;
+import com.melluh.mcauth.MojangAuthenticator;
+import com.melluh.mcauth.XboxAuthenticator;
+import com.melluh.mcauth.http.HttpTransport;
+
+import java.net.URI;
+
+// Login pipeline whose three authenticators share one private transport and send everything to a MockAuthServer
+public class MockPipeline extends LoginPipeline {
+
+    public MockPipeline(URI baseUri) {
+        this(baseUri, HttpTransport.createBuilder().build());
+    }
+
+    private MockPipeline(URI baseUri, HttpTransport transport) {
+        super(MicrosoftAuthenticator.createBuilder("test-client").setTransport(transport).setBaseUri(baseUri).build(),
+                XboxAuthenticator.createBuilder().setTransport(transport).setBaseUri(baseUri).build(),
+                MojangAuthenticator.createBuilder().setTransport(transport).setBaseUri(baseUri).build());
+    }
+
+}